@@ -261,7 +261,9 @@ public class Animation {
 	}
 
 	/**
-	 * Waits for completion of animation.
+	 * Waits for completion of animation. If the waiting thread is interrupted,
+	 * the method returns before the animation is completed and the interrupted
+	 * status of the thread is preserved.
 	 */
 	public void waitForCompletion() {
 		if (SwingUtilities.isEventDispatchThread()) {
@@ -272,18 +274,23 @@ public class Animation {
 			while (!completed) {
 				try {
 					lock.wait();
-				} catch (InterruptedException ignore) {
-
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
 				}
 			}
 		}
 	}
 
 	/**
-	 * Starts the animation and waits for its completion.
+	 * Starts the animation and waits for its completion. If the waiting thread
+	 * is interrupted, the animation is stopped.
 	 */
 	public void startAndWait() {
 		start();
 		waitForCompletion();
+		if (Thread.currentThread().isInterrupted()) {
+			stop();
+		}
 	}
 }
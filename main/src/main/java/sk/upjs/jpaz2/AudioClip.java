@@ -4,6 +4,7 @@ import java.io.*;
 import java.util.*;
 import java.net.URL;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.sound.midi.*;
 import javax.sound.sampled.*;
@@ -79,6 +80,21 @@ public class AudioClip {
 	// Internal implementations of raw uncompressed audio clip
 	// ---------------------------------------------------------------------------------------------------
 
+	/**
+	 * Playing of a raw audio clip.
+	 */
+	private interface RawAudioClipPlayback {
+		/**
+		 * Stops playing of the audio clip.
+		 */
+		void stop();
+
+		/**
+		 * Sets the volume.
+		 */
+		void setVolume(double volume);
+	}
+
 	private static class RawAudioClip implements InternalAudioClip {
 		/**
 		 * The size of buffer that is used to load sampled data from an audio
@@ -92,7 +108,21 @@ public class AudioClip {
 		final private URL url;
 
 		/**
-		 * Immutable loaded data of the audio resource.
+		 * Immutable loaded samples of the audio resource converted to the
+		 * format of the audio mixer. Samples are shared by all clips created
+		 * for the same URL.
+		 */
+		final private short[] mixerSamples;
+
+		/**
+		 * Immutable memory-mapped samples of a local audio file that is not
+		 * preloaded.
+		 */
+		final private AudioMixer.MappedSamples mappedSamples;
+
+		/**
+		 * Immutable loaded data of the audio resource, if the audio format is
+		 * not supported by the audio mixer.
 		 */
 		final private byte[] audioData;
 
@@ -102,9 +132,9 @@ public class AudioClip {
 		final private AudioFormat audioFormat;
 
 		/**
-		 * Runnable currently playing this audio clip.
+		 * Playback currently playing this audio clip.
 		 */
-		private RawAudioClipPlay clipPlay = null;
+		private RawAudioClipPlayback clipPlay = null;
 
 		/**
 		 * Volume used for playing this audio clip.
@@ -115,7 +145,7 @@ public class AudioClip {
 		 * List of currently playing audio clips based on this clips that were
 		 * started as action sound.
 		 */
-		final private List<RawAudioClipPlay> actionClipPlays = new ArrayList<RawAudioClipPlay>();
+		final private List<RawAudioClipPlayback> actionClipPlays = new ArrayList<RawAudioClipPlayback>();
 
 		/**
 		 * Constructs audio clip for uncompressed audio file.
@@ -131,25 +161,36 @@ public class AudioClip {
 			// load all audio resource data to memory
 			if (preloadInMemory) {
 				try {
-					AudioInputStream audioIS = null;
-					try {
-						audioIS = AudioSystem.getAudioInputStream(url);
-						ByteArrayOutputStream bos = new ByteArrayOutputStream();
-						byte[] copyBuffer = new byte[PRELOAD_BUFFER_SIZE];
-						int nBytesRead = 0;
-						while ((nBytesRead = audioIS.read(copyBuffer)) != -1) {
-							bos.write(copyBuffer, 0, nBytesRead);
+					mixerSamples = AudioSampleCache.acquire(url, this);
+					if (mixerSamples != null) {
+						audioData = null;
+						audioFormat = null;
+					} else {
+						// audio format is not supported by the mixer
+						AudioInputStream audioIS = null;
+						try {
+							audioIS = AudioSystem.getAudioInputStream(url);
+							ByteArrayOutputStream bos = new ByteArrayOutputStream();
+							byte[] copyBuffer = new byte[PRELOAD_BUFFER_SIZE];
+							int nBytesRead = 0;
+							while ((nBytesRead = audioIS.read(copyBuffer)) != -1) {
+								bos.write(copyBuffer, 0, nBytesRead);
+							}
+							audioData = bos.toByteArray();
+							audioFormat = audioIS.getFormat();
+						} finally {
+							if (audioIS != null)
+								audioIS.close();
 						}
-						audioData = bos.toByteArray();
-						audioFormat = audioIS.getFormat();
-					} finally {
-						if (audioIS != null)
-							audioIS.close();
 					}
 				} catch (Exception e) {
 					throw new RuntimeException("Loading of audio resource failed.", e);
 				}
+
+				mappedSamples = null;
 			} else {
+				mixerSamples = null;
+				mappedSamples = AudioMixer.MappedSamples.map(url);
 				audioFormat = null;
 				audioData = null;
 			}
@@ -158,9 +199,7 @@ public class AudioClip {
 		synchronized public void play() {
 			stop();
 
-			clipPlay = new RawAudioClipPlay(this, false);
-			clipPlay.setVolume(volume);
-			submitToAudioThread(clipPlay);
+			clipPlay = createClipPlay(false);
 		}
 
 		synchronized public void stop() {
@@ -174,9 +213,7 @@ public class AudioClip {
 		synchronized public void playInLoop() {
 			stop();
 
-			clipPlay = new RawAudioClipPlay(this, true);
-			clipPlay.setVolume(volume);
-			submitToAudioThread(clipPlay);
+			clipPlay = createClipPlay(true);
 		}
 
 		synchronized public boolean isPlaying() {
@@ -184,30 +221,45 @@ public class AudioClip {
 		}
 
 		synchronized public void playAsActionSound() {
-			RawAudioClipPlay clipPlay = new RawAudioClipPlay(this, false);
-			clipPlay.setVolume(volume);
-
-			actionClipPlays.add(clipPlay);
-			submitToAudioThread(clipPlay);
+			actionClipPlays.add(createClipPlay(false));
 		}
 
 		public void stopAllActionSounds() {
-			ArrayList<RawAudioClipPlay> toStopClips = null;
+			ArrayList<RawAudioClipPlayback> toStopClips = null;
 
 			synchronized (this) {
-				toStopClips = new ArrayList<RawAudioClipPlay>(actionClipPlays);
+				toStopClips = new ArrayList<RawAudioClipPlayback>(actionClipPlays);
 				actionClipPlays.clear();
 			}
 
-			for (RawAudioClipPlay clipPlay : toStopClips)
+			for (RawAudioClipPlayback clipPlay : toStopClips)
 				clipPlay.stop();
 		}
 
+		/**
+		 * Creates and starts a playback of this audio clip. Clips with samples
+		 * loaded or mapped in the memory are played by the audio mixer, other
+		 * clips are played in an audio thread.
+		 */
+		private RawAudioClipPlayback createClipPlay(boolean loop) {
+			if ((mixerSamples != null) || (mappedSamples != null)) {
+				MixerClipPlay clipPlay = new MixerClipPlay(this, loop);
+				clipPlay.setVolume(volume);
+				AudioMixer.getInstance().addVoice(clipPlay.voice);
+				return clipPlay;
+			} else {
+				RawAudioClipPlay clipPlay = new RawAudioClipPlay(this, loop);
+				clipPlay.setVolume(volume);
+				submitToAudioThread(clipPlay);
+				return clipPlay;
+			}
+		}
+
 		/**
 		 * Processes a notification that an playing of an audio clip was
 		 * finished.
 		 */
-		synchronized private void processClipPlayingFinish(RawAudioClipPlay play) {
+		synchronized private void processClipPlayingFinish(RawAudioClipPlayback play) {
 			if (clipPlay == play)
 				clipPlay = null;
 			else
@@ -224,6 +276,7 @@ public class AudioClip {
 			try {
 				getAudioThreadPoolExecutor().execute(clipPlay);
 			} catch (Exception e) {
+				rejectedPlayCount.incrementAndGet();
 				throw new RuntimeException("Too much audio clips played simultaneously.");
 			}
 		}
@@ -242,11 +295,54 @@ public class AudioClip {
 		}
 	}
 
+	/**
+	 * Playing of an audio clip by a voice of the audio mixer.
+	 */
+	private static class MixerClipPlay implements RawAudioClipPlayback, AudioMixer.VoiceListener {
+		/**
+		 * AudioClip that is played.
+		 */
+		final private RawAudioClip clip;
+
+		/**
+		 * Voice of the mixer playing the audio clip.
+		 */
+		final private AudioMixer.Voice voice;
+
+		/**
+		 * Constructs a playing of an audio clip by the mixer.
+		 * 
+		 * @param clip
+		 *            the clip to be played.
+		 * @param loop
+		 *            true, if clip should be looped.
+		 */
+		public MixerClipPlay(RawAudioClip clip, boolean loop) {
+			this.clip = clip;
+			if (clip.mixerSamples != null)
+				voice = new AudioMixer.Voice(clip.mixerSamples, loop, this);
+			else
+				voice = new AudioMixer.MappedVoice(clip.mappedSamples, loop, this);
+		}
+
+		public void stop() {
+			voice.stop();
+		}
+
+		public void setVolume(double volume) {
+			voice.setVolume(volume);
+		}
+
+		public void voiceFinished(AudioMixer.Voice voice) {
+			clip.processClipPlayingFinish(this);
+		}
+	}
+
 	/**
 	 * Runnable that "feeds" the SourceDataLine with audio data in an audio
 	 * thread.
 	 */
-	private static class RawAudioClipPlay implements Runnable {
+	private static class RawAudioClipPlay implements RawAudioClipPlayback, Runnable {
 		/**
 		 * Maximum number of frames to be stored in the buffer for playing audio
 		 * clips directly from an audio stream.
@@ -278,6 +374,16 @@ public class AudioClip {
 		 */
 		private double volume = 1;
 
+		/**
+		 * Time (in nanoseconds) when playing of the clip was requested.
+		 */
+		private final long requestTime = System.nanoTime();
+
+		/**
+		 * Indicates whether some data were already written to the audio line.
+		 */
+		private boolean started = false;
+
 		/**
 		 * Constructs a runnable for audio thread to sample an audio clip.
 		 * 
@@ -335,7 +441,7 @@ public class AudioClip {
 
 						if (isClipInMemory) {
 							// for buffered data, one write is enough
-							audioLine.write(clip.audioData, 0, clip.audioData.length);
+							writeToLine(clip.audioData, clip.audioData.length);
 						} else {
 							// create buffer for sampled data, if it does not
 							// exist
@@ -352,7 +458,7 @@ public class AudioClip {
 							int nBytesRead = 0;
 							while ((nBytesRead = audioStream.read(sampledDataBuffer, 0,
 									sampledDataBuffer.length)) != -1) {
-								audioLine.write(sampledDataBuffer, 0, nBytesRead);
+								writeToLine(sampledDataBuffer, nBytesRead);
 								if (isStopped())
 									return;
 							}
@@ -384,6 +490,21 @@ public class AudioClip {
 			}
 		}
 
+		/**
+		 * Writes data to the audio line and updates statistics of audio clips.
+		 */
+		private void writeToLine(byte[] data, int length) {
+			if (!started) {
+				started = true;
+				recordStartLatency(System.nanoTime() - requestTime);
+			} else if (audioLine.available() >= audioLine.getBufferSize()) {
+				recordUnderrun();
+			}
+
+			audioLine.write(data, 0, length);
+			recordStreamedBytes(length);
+		}
+
 		/**
 		 * Stops playing of the audio clip.
 		 */
@@ -473,6 +594,359 @@ public class AudioClip {
 		return audioThreadPoolExecutor;
 	}
 
+	/**
+	 * Returns the ThreadPoolExecutor managing threads for playing audio clips,
+	 * if it has been created.
+	 * 
+	 * @return the executor or null, if the executor has not been created yet.
+	 */
+	synchronized private static ThreadPoolExecutor getExistingAudioThreadPoolExecutor() {
+		return audioThreadPoolExecutor;
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Statistics of playing audio clips
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Snapshot of statistics of playing audio clips. Counters are cumulative
+	 * since the start of the application.
+	 */
+	public static class Statistics {
+		/**
+		 * Time when the snapshot was created in milliseconds.
+		 */
+		private final long timestamp;
+
+		/**
+		 * Number of voices played by the audio mixer.
+		 */
+		private final int activeVoiceCount;
+
+		/**
+		 * Number of clips played by audio threads.
+		 */
+		private final int activeThreadPlayCount;
+
+		/**
+		 * Number of audio threads.
+		 */
+		private final int audioThreadCount;
+
+		/**
+		 * Number of started plays with measured start latency.
+		 */
+		private final long startedPlayCount;
+
+		/**
+		 * Average start latency in milliseconds.
+		 */
+		private final double averageStartLatency;
+
+		/**
+		 * Maximal start latency in milliseconds.
+		 */
+		private final double maxStartLatency;
+
+		/**
+		 * Number of detected buffer underruns.
+		 */
+		private final long underrunCount;
+
+		/**
+		 * Number of bytes written to audio lines.
+		 */
+		private final long streamedBytes;
+
+		/**
+		 * Number of plays rejected due to too many simultaneously played
+		 * clips.
+		 */
+		private final long rejectedPlayCount;
+
+		/**
+		 * Number of voices stopped in order to play a newer voice.
+		 */
+		private final long stolenVoiceCount;
+
+		/**
+		 * Constructs a snapshot of current statistics.
+		 */
+		private Statistics() {
+			timestamp = System.currentTimeMillis();
+			// the mixer and the thread pool are not created by statistics
+			AudioMixer mixer = AudioMixer.getExistingInstance();
+			activeVoiceCount = (mixer != null) ? mixer.getActiveVoiceCount() : 0;
+
+			ThreadPoolExecutor executor = getExistingAudioThreadPoolExecutor();
+			activeThreadPlayCount = (executor != null) ? executor.getActiveCount() : 0;
+			audioThreadCount = (executor != null) ? executor.getPoolSize() : 0;
+
+			synchronized (startLatencyLock) {
+				startedPlayCount = startLatencyCount;
+				averageStartLatency = (startLatencyCount == 0) ? 0
+						: startLatencyTotal / (double) startLatencyCount / 1000000.0;
+				maxStartLatency = startLatencyMax / 1000000.0;
+			}
+
+			underrunCount = AudioClip.underrunCount.get();
+			streamedBytes = AudioClip.streamedBytes.get();
+			rejectedPlayCount = AudioClip.rejectedPlayCount.get();
+			stolenVoiceCount = AudioClip.stolenVoiceCount.get();
+		}
+
+		/**
+		 * Returns the time when this snapshot was created.
+		 * 
+		 * @return the time in milliseconds (see
+		 *         {@link System#currentTimeMillis()})
+		 */
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		/**
+		 * Returns the number of currently played sounds (voices of the audio
+		 * mixer and clips played by audio threads).
+		 * 
+		 * @return the number of active voices.
+		 */
+		public int getActiveVoiceCount() {
+			return activeVoiceCount + activeThreadPlayCount;
+		}
+
+		/**
+		 * Returns the number of threads that play audio clips which are not
+		 * played by the audio mixer.
+		 * 
+		 * @return the number of audio threads.
+		 */
+		public int getAudioThreadCount() {
+			return audioThreadCount;
+		}
+
+		/**
+		 * Returns the number of plays whose start latency was measured.
+		 * 
+		 * @return the number of started plays.
+		 */
+		public long getStartedPlayCount() {
+			return startedPlayCount;
+		}
+
+		/**
+		 * Returns the average time between a request to play a clip and
+		 * playing its first sample.
+		 * 
+		 * @return the average latency in milliseconds.
+		 */
+		public double getAverageStartLatency() {
+			return averageStartLatency;
+		}
+
+		/**
+		 * Returns the maximal time between a request to play a clip and playing
+		 * its first sample.
+		 * 
+		 * @return the maximal latency in milliseconds.
+		 */
+		public double getMaxStartLatency() {
+			return maxStartLatency;
+		}
+
+		/**
+		 * Returns the number of detected buffer underruns, i.e., situations
+		 * when an audio line ran out of data while playing.
+		 * 
+		 * @return the number of underruns.
+		 */
+		public long getUnderrunCount() {
+			return underrunCount;
+		}
+
+		/**
+		 * Returns the number of bytes written to audio lines.
+		 * 
+		 * @return the number of streamed bytes.
+		 */
+		public long getStreamedBytes() {
+			return streamedBytes;
+		}
+
+		/**
+		 * Returns the number of plays that were rejected, because too many
+		 * audio clips were played simultaneously.
+		 * 
+		 * @return the number of rejected plays.
+		 */
+		public long getRejectedPlayCount() {
+			return rejectedPlayCount;
+		}
+
+		/**
+		 * Returns the number of voices that were stopped in order to play a
+		 * newer voice.
+		 * 
+		 * @return the number of stolen voices.
+		 */
+		public long getStolenVoiceCount() {
+			return stolenVoiceCount;
+		}
+
+		@Override
+		public String toString() {
+			return "voices=" + getActiveVoiceCount() + ", threads=" + audioThreadCount + ", latency(avg/max)="
+					+ String.format("%.1f/%.1f ms", averageStartLatency, maxStartLatency) + ", underruns="
+					+ underrunCount + ", streamed=" + streamedBytes + " B, rejected=" + rejectedPlayCount
+					+ ", stolen=" + stolenVoiceCount;
+		}
+	}
+
+	/**
+	 * The listener interface for receiving periodic snapshots of statistics of
+	 * playing audio clips.
+	 */
+	public interface StatisticsListener {
+		/**
+		 * Invoked when a new snapshot of statistics is available.
+		 * 
+		 * @param statistics
+		 *            the snapshot of statistics.
+		 */
+		void statisticsUpdated(Statistics statistics);
+	}
+
+	/**
+	 * Lock guarding the start latency statistics.
+	 */
+	private static final Object startLatencyLock = new Object();
+
+	/**
+	 * Number of measured start latencies.
+	 */
+	private static long startLatencyCount = 0;
+
+	/**
+	 * Sum of measured start latencies in nanoseconds.
+	 */
+	private static long startLatencyTotal = 0;
+
+	/**
+	 * Maximal measured start latency in nanoseconds.
+	 */
+	private static long startLatencyMax = 0;
+
+	/**
+	 * Number of detected buffer underruns.
+	 */
+	private static final AtomicLong underrunCount = new AtomicLong();
+
+	/**
+	 * Number of bytes written to audio lines.
+	 */
+	private static final AtomicLong streamedBytes = new AtomicLong();
+
+	/**
+	 * Number of rejected plays.
+	 */
+	private static final AtomicLong rejectedPlayCount = new AtomicLong();
+
+	/**
+	 * Number of stolen voices.
+	 */
+	private static final AtomicLong stolenVoiceCount = new AtomicLong();
+
+	/**
+	 * Scheduled deliveries of statistics to registered listeners.
+	 */
+	private static final Map<StatisticsListener, ScheduledFuture<?>> statisticsListeners = new HashMap<StatisticsListener, ScheduledFuture<?>>();
+
+	/**
+	 * Records a start latency of a played clip.
+	 */
+	static void recordStartLatency(long latency) {
+		synchronized (startLatencyLock) {
+			startLatencyCount++;
+			startLatencyTotal += latency;
+			startLatencyMax = Math.max(startLatencyMax, latency);
+		}
+	}
+
+	/**
+	 * Records a buffer underrun.
+	 */
+	static void recordUnderrun() {
+		underrunCount.incrementAndGet();
+	}
+
+	/**
+	 * Records bytes written to an audio line.
+	 */
+	static void recordStreamedBytes(long bytes) {
+		streamedBytes.addAndGet(bytes);
+	}
+
+	/**
+	 * Records a voice stopped in order to play a newer voice.
+	 */
+	static void recordStolenVoice() {
+		stolenVoiceCount.incrementAndGet();
+	}
+
+	/**
+	 * Returns a snapshot of current statistics of playing audio clips.
+	 * 
+	 * @return the snapshot of statistics.
+	 */
+	public static Statistics getStatistics() {
+		return new Statistics();
+	}
+
+	/**
+	 * Registers a listener that periodically receives snapshots of statistics
+	 * of playing audio clips. The listener is invoked in a background thread.
+	 * 
+	 * @param listener
+	 *            the listener.
+	 * @param period
+	 *            the period in milliseconds.
+	 */
+	public static void addStatisticsListener(final StatisticsListener listener, long period) {
+		if (listener == null)
+			throw new NullPointerException("The listener cannot be null.");
+
+		if (period <= 0)
+			throw new IllegalArgumentException("The period must be a positive number.");
+
+		synchronized (statisticsListeners) {
+			removeStatisticsListener(listener);
+			ScheduledFuture<?> future = JPAZUtilities.getScheduler().scheduleAtFixedRate(new Runnable() {
+				public void run() {
+					try {
+						listener.statisticsUpdated(getStatistics());
+					} catch (Exception e) {
+						System.err.println("Delivery of audio statistics failed: " + e.toString());
+					}
+				}
+			}, period, period, TimeUnit.MILLISECONDS);
+			statisticsListeners.put(listener, future);
+		}
+	}
+
+	/**
+	 * Unregisters a listener of statistics of playing audio clips.
+	 * 
+	 * @param listener
+	 *            the listener.
+	 */
+	public static void removeStatisticsListener(StatisticsListener listener) {
+		synchronized (statisticsListeners) {
+			ScheduledFuture<?> future = statisticsListeners.remove(listener);
+			if (future != null)
+				future.cancel(false);
+		}
+	}
+
 	// ---------------------------------------------------------------------------------------------------
 	// Internal implementations of MIDI sequences
 	// ---------------------------------------------------------------------------------------------------
@@ -480,8 +954,6 @@ public class AudioClip {
 	private static class MidiAudioClip implements InternalAudioClip, MetaEventListener {
 
 		// MIDI INTERNAL CONSTANTS
-		private static final int VOLUME_CONTROLLER = 7;
-		private static final int MAX_CHANNELS = 16;
 		private static final int END_OF_TRACK_MESSAGE = 47;
 
 		/**
@@ -490,19 +962,16 @@ public class AudioClip {
 		private Sequence midiSequence;
 
 		/**
-		 * MIDI Sequencer for playing the sequence.
+		 * MIDI Sequencer (from the pool of shared sequencers) for playing the
+		 * sequence.
 		 */
 		private Sequencer midiSequencer;
 
 		/**
-		 * MIDI Receiver that receives generated MIDI events.
-		 */
-		private Receiver midiReceiver;
-
-		/**
-		 * MIDI synthesizer
+		 * MIDI Receiver that receives generated MIDI events and applies the
+		 * volume of this clip.
 		 */
-		private Synthesizer midiSynthesizer;
+		private MidiVolumeReceiver midiReceiver;
 
 		/**
 		 * URL of resource with MIDI sequence.
@@ -514,11 +983,6 @@ public class AudioClip {
 		 */
 		private double volume = 1;
 
-		/**
-		 * Indicates whether volume of this clip was already updated.
-		 */
-		private boolean volumeUpdated = false;
-
 		/**
 		 * Indicates that this clip is played in the loop.
 		 */
@@ -548,24 +1012,21 @@ public class AudioClip {
 
 			isInLoop = false;
 			prepareMIDI(false);
-			midiSequencer.start();
+			if (midiSequencer != null)
+				midiSequencer.start();
 		}
 
 		synchronized public void stop() {
 			if (midiSequencer != null) {
 				midiSequencer.stop();
-				midiSequencer.close();
+				midiSequencer.removeMetaEventListener(this);
+				releaseSharedSequencer(midiSequencer);
 				midiSequencer = null;
 
 				if (midiReceiver != null) {
-					midiReceiver.close();
+					midiReceiver.allNotesOff();
 					midiReceiver = null;
 				}
-
-				if (midiSynthesizer != null) {
-					midiSynthesizer.close();
-					midiSynthesizer = null;
-				}
 			}
 		}
 
@@ -574,7 +1035,8 @@ public class AudioClip {
 
 			isInLoop = true;
 			prepareMIDI(true);
-			midiSequencer.start();
+			if (midiSequencer != null)
+				midiSequencer.start();
 		}
 
 		synchronized public boolean isPlaying() {
@@ -604,92 +1066,277 @@ public class AudioClip {
 			}
 
 			try {
-				volumeUpdated = false;
-				midiSequencer = MidiSystem.getSequencer(false);
-				midiSynthesizer = MidiSystem.getSynthesizer();
-
-				if (midiSynthesizer.getDefaultSoundbank() == null) {
-					midiSynthesizer = null;
-					midiReceiver = MidiSystem.getReceiver();
-				} else {
-					midiSynthesizer.open();
-					midiReceiver = midiSynthesizer.getReceiver();
-				}
-
+				midiReceiver = new MidiVolumeReceiver(getSharedMidiReceiver());
+				midiReceiver.setVolume(volume);
+				midiSequencer = acquireSharedSequencer(midiReceiver);
 				midiSequencer.addMetaEventListener(this);
-				midiSequencer.open();
-				midiSequencer.getTransmitter().setReceiver(midiReceiver);
 				midiSequencer.setSequence(midiSequence);
-				if (loop)
-					midiSequencer.setLoopCount(Sequencer.LOOP_CONTINUOUSLY);
+				midiSequencer.setTickPosition(0);
+				midiSequencer.setLoopCount(loop ? Sequencer.LOOP_CONTINUOUSLY : 0);
 			} catch (Exception e) {
 				System.err.println("Playing of an audio file with midi sequence failed:" + e.toString());
 
 				if (midiSequencer != null) {
-					midiSequencer.close();
+					midiSequencer.removeMetaEventListener(this);
+					releaseSharedSequencer(midiSequencer);
 					midiSequencer = null;
 				}
 
-				if (midiReceiver != null) {
-					midiReceiver.close();
-					midiReceiver = null;
-				}
+				midiReceiver = null;
+			}
+		}
 
-				if (midiSynthesizer != null) {
-					midiSynthesizer.close();
-					midiSynthesizer = null;
-				}
+		synchronized public double getVolume() {
+			return volume;
+		}
+
+		synchronized public void setVolume(double volume) {
+			this.volume = volume;
+			if (midiReceiver != null)
+				midiReceiver.setVolume(volume);
+		}
+
+		synchronized public void meta(MetaMessage msg) {
+			if (msg.getType() == END_OF_TRACK_MESSAGE) {
+				if (!isInLoop)
+					stop();
 			}
 		}
+	}
+
+	/**
+	 * Receiver that forwards MIDI messages to a shared receiver and scales
+	 * volumes of channels by the volume of an audio clip. The receiver tracks
+	 * notes sounding due to the clip, so that only these notes are stopped
+	 * when the clip is stopped. Since all MIDI clips share channels of a single
+	 * synthesizer, volume, program and other controller changes of
+	 * concurrently played clips that use the same channel affect each other.
+	 */
+	private static class MidiVolumeReceiver implements Receiver {
+
+		// MIDI INTERNAL CONSTANTS
+		private static final int VOLUME_CONTROLLER = 7;
+		private static final int SUSTAIN_CONTROLLER = 64;
+		private static final int MAX_CHANNELS = 16;
+		private static final int MAX_NOTES = 128;
+		private static final int DEFAULT_CHANNEL_VOLUME = 100;
+
+		/**
+		 * The shared receiver.
+		 */
+		private final Receiver target;
+
+		/**
+		 * Volumes of channels set by the played sequence.
+		 */
+		private final int[] channelVolumes = new int[MAX_CHANNELS];
+
+		/**
+		 * Indicates channels used by the played sequence.
+		 */
+		private final boolean[] usedChannels = new boolean[MAX_CHANNELS];
 
 		/**
-		 * Updates volume.
+		 * Indicates channels where the played sequence pressed the sustain
+		 * pedal.
 		 */
-		private void updateVolume() {
-			double volume = this.volume;
-			this.volume = -1000;
-			setVolume(volume);
-			volumeUpdated = true;
+		private final boolean[] sustainedChannels = new boolean[MAX_CHANNELS];
+
+		/**
+		 * Number of note-on messages without matching note-off message for
+		 * each channel and note.
+		 */
+		private final int[][] soundingNotes = new int[MAX_CHANNELS][MAX_NOTES];
+
+		/**
+		 * Volume of the audio clip - a number between 0 and 1 (loudest).
+		 */
+		private double volume = 1;
+
+		/**
+		 * Constructs the receiver.
+		 * 
+		 * @param target
+		 *            the shared receiver
+		 */
+		public MidiVolumeReceiver(Receiver target) {
+			this.target = target;
+			Arrays.fill(channelVolumes, DEFAULT_CHANNEL_VOLUME);
 		}
 
-		synchronized public double getVolume() {
-			return volume;
+		synchronized public void send(MidiMessage message, long timeStamp) {
+			if (message instanceof ShortMessage) {
+				ShortMessage sm = (ShortMessage) message;
+				int command = sm.getCommand();
+				int channel = sm.getChannel();
+				if ((command >= ShortMessage.NOTE_OFF) && (command <= ShortMessage.PITCH_BEND)
+						&& !usedChannels[channel]) {
+					usedChannels[channel] = true;
+					// the shared synthesizer keeps channel volumes set by
+					// previously played clips
+					sendControlChange(channel, VOLUME_CONTROLLER, scaledVolume(channel), timeStamp);
+				}
+
+				if ((command == ShortMessage.NOTE_ON) && (sm.getData2() > 0)) {
+					soundingNotes[channel][sm.getData1()]++;
+				} else if ((command == ShortMessage.NOTE_OFF) || (command == ShortMessage.NOTE_ON)) {
+					if (soundingNotes[channel][sm.getData1()] > 0)
+						soundingNotes[channel][sm.getData1()]--;
+				} else if (command == ShortMessage.CONTROL_CHANGE) {
+					if (sm.getData1() == VOLUME_CONTROLLER) {
+						channelVolumes[channel] = sm.getData2();
+						sendControlChange(channel, VOLUME_CONTROLLER, scaledVolume(channel), timeStamp);
+						return;
+					}
+
+					if (sm.getData1() == SUSTAIN_CONTROLLER)
+						sustainedChannels[channel] = (sm.getData2() >= 64);
+				}
+			}
+
+			target.send(message, timeStamp);
 		}
 
+		/**
+		 * Sets the volume of the audio clip and updates volumes of channels
+		 * used by the played sequence. Volume of a channel is set also when
+		 * the sequence uses the channel for the first time.
+		 */
 		synchronized public void setVolume(double volume) {
-			int oldMidiVolume = (int) (this.volume * 127);
 			this.volume = volume;
-			int midiVolume = (int) (volume * 127);
-
-			if (midiVolume == oldMidiVolume)
-				return;
+			for (int i = 0; i < MAX_CHANNELS; i++)
+				if (usedChannels[i])
+					sendControlChange(i, VOLUME_CONTROLLER, scaledVolume(i), -1);
+		}
 
-			if (midiSynthesizer != null) {
-				MidiChannel[] channels = midiSynthesizer.getChannels();
-				for (int i = 0; i < channels.length; i++) {
-					channels[i].controlChange(VOLUME_CONTROLLER, midiVolume);
+		/**
+		 * Stops notes sounding due to the played sequence and releases the
+		 * sustain pedal pressed by the sequence. Notes of other clips are not
+		 * affected.
+		 */
+		synchronized public void allNotesOff() {
+			for (int channel = 0; channel < MAX_CHANNELS; channel++) {
+				if (sustainedChannels[channel]) {
+					sendControlChange(channel, SUSTAIN_CONTROLLER, 0, -1);
+					sustainedChannels[channel] = false;
 				}
-			} else if (midiReceiver != null) {
-				ShortMessage volMessage = new ShortMessage();
-				for (int i = 0; i < MAX_CHANNELS; i++) {
-					try {
-						volMessage.setMessage(ShortMessage.CONTROL_CHANGE, i, VOLUME_CONTROLLER, midiVolume);
-					} catch (Exception e) {
+
+				for (int note = 0; note < MAX_NOTES; note++) {
+					while (soundingNotes[channel][note] > 0) {
+						sendShortMessage(ShortMessage.NOTE_OFF, channel, note, 0, -1);
+						soundingNotes[channel][note]--;
 					}
-					midiReceiver.send(volMessage, -1);
 				}
 			}
 		}
 
-		synchronized public void meta(MetaMessage msg) {
-			if (!volumeUpdated)
-				updateVolume();
+		/**
+		 * Returns volume of a channel scaled by the volume of the clip.
+		 */
+		private int scaledVolume(int channel) {
+			return (int) (channelVolumes[channel] * volume);
+		}
 
-			if (msg.getType() == END_OF_TRACK_MESSAGE) {
-				if (!isInLoop)
-					stop();
+		/**
+		 * Sends a control change message to the shared receiver.
+		 */
+		private void sendControlChange(int channel, int controller, int value, long timeStamp) {
+			sendShortMessage(ShortMessage.CONTROL_CHANGE, channel, controller, value, timeStamp);
+		}
+
+		/**
+		 * Sends a short message to the shared receiver.
+		 */
+		private void sendShortMessage(int command, int channel, int data1, int data2, long timeStamp) {
+			try {
+				ShortMessage message = new ShortMessage();
+				message.setMessage(command, channel, data1, data2);
+				target.send(message, timeStamp);
+			} catch (Exception e) {
+				// nothing to do
 			}
 		}
+
+		public void close() {
+			// the shared receiver is not closed
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Shared MIDI devices
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Maximum number of idle sequencers kept in the pool.
+	 */
+	private static final int MAX_IDLE_SEQUENCERS = 4;
+
+	/**
+	 * Receiver (of the shared synthesizer) that receives MIDI events of all
+	 * MIDI clips.
+	 */
+	private static Receiver sharedMidiReceiver = null;
+
+	/**
+	 * Opened sequencers that are not used by a MIDI clip.
+	 */
+	private static final List<Sequencer> idleSequencers = new ArrayList<Sequencer>();
+
+	/**
+	 * Transmitters of pooled sequencers.
+	 */
+	private static final Map<Sequencer, Transmitter> sequencerTransmitters = new HashMap<Sequencer, Transmitter>();
+
+	/**
+	 * Returns the receiver shared by all MIDI clips. The synthesizer is opened
+	 * only once.
+	 */
+	synchronized private static Receiver getSharedMidiReceiver() throws MidiUnavailableException {
+		if (sharedMidiReceiver == null) {
+			Synthesizer synthesizer = MidiSystem.getSynthesizer();
+			if (synthesizer.getDefaultSoundbank() == null) {
+				sharedMidiReceiver = MidiSystem.getReceiver();
+			} else {
+				synthesizer.open();
+				sharedMidiReceiver = synthesizer.getReceiver();
+			}
+		}
+
+		return sharedMidiReceiver;
+	}
+
+	/**
+	 * Returns an opened sequencer from the pool of sequencers. Events of the
+	 * sequencer are sent to the given receiver.
+	 */
+	synchronized private static Sequencer acquireSharedSequencer(Receiver receiver) throws MidiUnavailableException {
+		Sequencer sequencer;
+		if (idleSequencers.isEmpty()) {
+			sequencer = MidiSystem.getSequencer(false);
+			sequencer.open();
+			sequencerTransmitters.put(sequencer, sequencer.getTransmitter());
+		} else {
+			sequencer = idleSequencers.remove(idleSequencers.size() - 1);
+		}
+
+		sequencerTransmitters.get(sequencer).setReceiver(receiver);
+		return sequencer;
+	}
+
+	/**
+	 * Returns a stopped sequencer to the pool of sequencers.
+	 */
+	synchronized private static void releaseSharedSequencer(Sequencer sequencer) {
+		Transmitter transmitter = sequencerTransmitters.get(sequencer);
+		if (transmitter != null)
+			transmitter.setReceiver(null);
+
+		if (idleSequencers.size() < MAX_IDLE_SEQUENCERS) {
+			idleSequencers.add(sequencer);
+		} else {
+			sequencerTransmitters.remove(sequencer);
+			sequencer.close();
+		}
 	}
 
 	// ---------------------------------------------------------------------------------------------------
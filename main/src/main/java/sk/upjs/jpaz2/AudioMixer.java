@@ -0,0 +1,828 @@
+package sk.upjs.jpaz2;
+
+import java.io.*;
+import java.net.URL;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+import javax.sound.sampled.*;
+
+/**
+ * Internal software mixer of audio clips. All voices (playing preloaded audio
+ * clips or memory-mapped audio files) are mixed by a single mixing thread and
+ * written to a single audio line. Samples of preloaded voices are stored in the
+ * canonical format of the mixer: 16 bit signed stereo PCM with the sample rate
+ * {@link #SAMPLE_RATE}.
+ */
+class AudioMixer {
+
+	// ---------------------------------------------------------------------------------------------------
+	// Voices
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Listener notified when a voice was finished.
+	 */
+	interface VoiceListener {
+		/**
+		 * Invoked when playing of a voice was finished, stopped, or the voice
+		 * was stolen by a newer voice.
+		 *
+		 * @param voice
+		 *            the finished voice.
+		 */
+		void voiceFinished(Voice voice);
+	}
+
+	/**
+	 * A voice playing samples in the mixer.
+	 */
+	static class Voice {
+		/**
+		 * Interleaved stereo samples of the voice.
+		 */
+		private final short[] samples;
+
+		/**
+		 * Indicates whether the voice is played in loop.
+		 */
+		final boolean loop;
+
+		/**
+		 * Listener notified when the voice is finished.
+		 */
+		private final VoiceListener listener;
+
+		/**
+		 * Index of the next played frame. It is accessed only by the mixing
+		 * thread.
+		 */
+		private int position = 0;
+
+		/**
+		 * Sequence number of the voice used to determine the oldest voice.
+		 */
+		private long sequenceNumber;
+
+		/**
+		 * Volume (linear gain) of the voice.
+		 */
+		private volatile float volume = 1;
+
+		/**
+		 * Indicates that the voice was stopped.
+		 */
+		private volatile boolean stopped = false;
+
+		/**
+		 * Time (in nanoseconds) when playing of the voice was requested.
+		 */
+		private final long requestTime = System.nanoTime();
+
+		/**
+		 * Indicates whether samples of the voice have already been mixed.
+		 */
+		private boolean started = false;
+
+		/**
+		 * Constructs a voice.
+		 *
+		 * @param samples
+		 *            the interleaved stereo samples in the canonical format of
+		 *            the mixer
+		 * @param loop
+		 *            true, if the voice is played in loop
+		 * @param listener
+		 *            the listener notified when the voice is finished
+		 */
+		Voice(short[] samples, boolean loop, VoiceListener listener) {
+			this.samples = samples;
+			this.loop = loop;
+			this.listener = listener;
+		}
+
+		/**
+		 * Sets the volume of the voice. Volume is a number between 0 and 1
+		 * (loudest).
+		 */
+		void setVolume(double volume) {
+			this.volume = (float) volume;
+		}
+
+		/**
+		 * Stops the voice.
+		 */
+		void stop() {
+			stopped = true;
+		}
+
+		/**
+		 * Mixes the voice into a buffer.
+		 *
+		 * @return true, if the voice is finished, false otherwise.
+		 */
+		private boolean mixTo(int[] buffer, int frameCount) {
+			if (stopped)
+				return true;
+
+			started = true;
+
+			return mixSamples(buffer, frameCount, volume);
+		}
+
+		/**
+		 * Adds samples of the voice to a buffer.
+		 *
+		 * @param buffer
+		 *            the buffer with interleaved stereo samples
+		 * @param frameCount
+		 *            the number of frames to be mixed
+		 * @param gain
+		 *            the gain applied to samples
+		 * @return true, if the voice is finished, false otherwise.
+		 */
+		boolean mixSamples(int[] buffer, int frameCount, float gain) {
+			int frames = samples.length / 2;
+			if (frames == 0)
+				return true;
+
+			int idx = 0;
+			int end = frameCount * 2;
+			while (idx < end) {
+				if (position >= frames) {
+					if (!loop)
+						return true;
+
+					position = 0;
+				}
+
+				int count = Math.min((end - idx) / 2, frames - position);
+				int sampleIdx = position * 2;
+				if (gain == 1) {
+					for (int i = 0; i < count * 2; i++)
+						buffer[idx++] += samples[sampleIdx++];
+				} else {
+					for (int i = 0; i < count * 2; i++)
+						buffer[idx++] += (int) (samples[sampleIdx++] * gain);
+				}
+
+				position += count;
+			}
+
+			return (position >= frames) && !loop;
+		}
+	}
+
+	/**
+	 * A voice playing samples of a memory-mapped audio file. Samples are
+	 * converted to the format of the mixer while mixing and looping is
+	 * realized by wrapping the read position.
+	 */
+	static class MappedVoice extends Voice {
+		/**
+		 * The memory-mapped samples.
+		 */
+		private final MappedSamples mappedSamples;
+
+		/**
+		 * Position of the next played frame in the memory-mapped samples.
+		 */
+		private double mappedPosition = 0;
+
+		/**
+		 * Constructs a voice playing memory-mapped samples.
+		 *
+		 * @param mappedSamples
+		 *            the memory-mapped samples
+		 * @param loop
+		 *            true, if the voice is played in loop
+		 * @param listener
+		 *            the listener notified when the voice is finished
+		 */
+		MappedVoice(MappedSamples mappedSamples, boolean loop, VoiceListener listener) {
+			super(null, loop, listener);
+			this.mappedSamples = mappedSamples;
+		}
+
+		@Override
+		boolean mixSamples(int[] buffer, int frameCount, float gain) {
+			MappedSamples ms = mappedSamples;
+			int frames = ms.frameCount;
+			if (frames == 0)
+				return true;
+
+			double step = ms.sampleRate / SAMPLE_RATE;
+			int rightChannel = (ms.channels > 1) ? 1 : 0;
+			int idx = 0;
+			for (int i = 0; i < frameCount; i++) {
+				if (mappedPosition >= frames) {
+					if (!loop)
+						return true;
+
+					mappedPosition -= frames;
+				}
+
+				int frame = (int) mappedPosition;
+				double ratio = mappedPosition - frame;
+				int left = ms.getSample(frame, 0);
+				int right = ms.getSample(frame, rightChannel);
+				if (ratio != 0) {
+					int nextFrame = frame + 1;
+					if (nextFrame >= frames)
+						nextFrame = loop ? 0 : frame;
+
+					left += (int) ((ms.getSample(nextFrame, 0) - left) * ratio);
+					right += (int) ((ms.getSample(nextFrame, rightChannel) - right) * ratio);
+				}
+
+				buffer[idx++] += (int) (left * gain);
+				buffer[idx++] += (int) (right * gain);
+				mappedPosition += step;
+			}
+
+			return (mappedPosition >= frames) && !loop;
+		}
+	}
+
+	/**
+	 * Samples of an uncompressed audio file (WAV or AIFF) mapped into the
+	 * memory.
+	 */
+	static class MappedSamples {
+		/**
+		 * Read-only buffer with the sample region of the file.
+		 */
+		private final ByteBuffer buffer;
+
+		/**
+		 * Number of frames.
+		 */
+		private final int frameCount;
+
+		/**
+		 * Size of a frame in bytes.
+		 */
+		private final int frameSize;
+
+		/**
+		 * Number of channels.
+		 */
+		private final int channels;
+
+		/**
+		 * Number of bytes per sample.
+		 */
+		private final int bytesPerSample;
+
+		/**
+		 * Whether samples are signed.
+		 */
+		private final boolean signed;
+
+		/**
+		 * Sample rate.
+		 */
+		private final float sampleRate;
+
+		/**
+		 * Constructs memory-mapped samples.
+		 */
+		private MappedSamples(ByteBuffer buffer, AudioFormat format) {
+			this.buffer = buffer;
+			this.frameSize = format.getFrameSize();
+			this.frameCount = buffer.capacity() / frameSize;
+			this.channels = format.getChannels();
+			this.bytesPerSample = format.getSampleSizeInBits() / 8;
+			this.signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+			this.sampleRate = format.getSampleRate();
+			buffer.order(format.isBigEndian() ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+		}
+
+		/**
+		 * Returns a sample as a 16 bit signed value.
+		 */
+		private int getSample(int frame, int channel) {
+			int idx = frame * frameSize + channel * bytesPerSample;
+			if (bytesPerSample == 2) {
+				int sample = buffer.getShort(idx);
+				return signed ? sample : (short) (sample ^ 0x8000);
+			} else {
+				int sample = buffer.get(idx);
+				return signed ? (sample << 8) : (((sample & 0xFF) - 128) << 8);
+			}
+		}
+
+		/**
+		 * Maps samples of an uncompressed audio file into the memory.
+		 *
+		 * @param url
+		 *            the URL of the audio file
+		 * @return the memory-mapped samples or null, if the URL does not refer
+		 *         to a local WAV or AIFF file with 8 or 16 bit PCM samples.
+		 */
+		static MappedSamples map(URL url) {
+			if (!"file".equalsIgnoreCase(url.getProtocol()))
+				return null;
+
+			try {
+				File file = new File(url.toURI());
+				AudioFileFormat fileFormat = AudioSystem.getAudioFileFormat(file);
+				AudioFormat format = fileFormat.getFormat();
+
+				AudioFormat.Encoding encoding = format.getEncoding();
+				if (!AudioFormat.Encoding.PCM_SIGNED.equals(encoding)
+						&& !AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding))
+					return null;
+
+				int sampleSize = format.getSampleSizeInBits();
+				if (((sampleSize != 8) && (sampleSize != 16)) || (format.getChannels() < 1)
+						|| (format.getSampleRate() <= 0)
+						|| (format.getFrameSize() != format.getChannels() * sampleSize / 8))
+					return null;
+
+				RandomAccessFile raf = new RandomAccessFile(file, "r");
+				try {
+					long[] region = null;
+					AudioFileFormat.Type type = fileFormat.getType();
+					if (AudioFileFormat.Type.WAVE.equals(type))
+						region = findWaveSampleRegion(raf);
+					else if (AudioFileFormat.Type.AIFF.equals(type) || AudioFileFormat.Type.AIFC.equals(type))
+						region = findAiffSampleRegion(raf);
+
+					if (region == null)
+						return null;
+
+					long length = Math.min(region[1], raf.length() - region[0]);
+					if ((length <= 0) || (length > Integer.MAX_VALUE))
+						return null;
+
+					ByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, region[0], length);
+					return new MappedSamples(buffer, format);
+				} finally {
+					raf.close();
+				}
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Finds offset and length of the data chunk in a WAV file.
+		 */
+		private static long[] findWaveSampleRegion(RandomAccessFile raf) throws IOException {
+			byte[] header = new byte[12];
+			raf.seek(0);
+			raf.readFully(header);
+			if (!"RIFF".equals(new String(header, 0, 4, "US-ASCII"))
+					|| !"WAVE".equals(new String(header, 8, 4, "US-ASCII")))
+				return null;
+
+			byte[] chunkHeader = new byte[8];
+			long position = 12;
+			while (position + 8 <= raf.length()) {
+				raf.seek(position);
+				raf.readFully(chunkHeader);
+				long chunkSize = ByteBuffer.wrap(chunkHeader, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt()
+						& 0xFFFFFFFFL;
+				if ("data".equals(new String(chunkHeader, 0, 4, "US-ASCII")))
+					return new long[] { position + 8, chunkSize };
+
+				position += 8 + chunkSize + (chunkSize & 1);
+			}
+
+			return null;
+		}
+
+		/**
+		 * Finds offset and length of the sound data in an AIFF file.
+		 */
+		private static long[] findAiffSampleRegion(RandomAccessFile raf) throws IOException {
+			byte[] header = new byte[12];
+			raf.seek(0);
+			raf.readFully(header);
+			if (!"FORM".equals(new String(header, 0, 4, "US-ASCII")))
+				return null;
+
+			byte[] chunkHeader = new byte[8];
+			long position = 12;
+			while (position + 8 <= raf.length()) {
+				raf.seek(position);
+				raf.readFully(chunkHeader);
+				long chunkSize = ByteBuffer.wrap(chunkHeader, 4, 4).getInt() & 0xFFFFFFFFL;
+				if ("SSND".equals(new String(chunkHeader, 0, 4, "US-ASCII"))) {
+					long dataOffset = raf.readInt() & 0xFFFFFFFFL;
+					return new long[] { position + 16 + dataOffset, chunkSize - 8 - dataOffset };
+				}
+
+				position += 8 + chunkSize + (chunkSize & 1);
+			}
+
+			return null;
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Constants
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Sample rate of the mixer.
+	 */
+	static final float SAMPLE_RATE = 44100;
+
+	/**
+	 * Audio format of the mixer output.
+	 */
+	static final AudioFormat FORMAT = new AudioFormat(SAMPLE_RATE, 16, 2, true, false);
+
+	/**
+	 * Maximal number of simultaneously played voices. If the limit is
+	 * exceeded, the oldest voice is stopped.
+	 */
+	private static final int MAX_VOICES = 32;
+
+	/**
+	 * Number of frames mixed in one step.
+	 */
+	private static final int CHUNK_FRAMES = 512;
+
+	/**
+	 * Size of the buffer of the audio line in frames.
+	 */
+	private static final int LINE_BUFFER_FRAMES = 4096;
+
+	/**
+	 * Timeout in milliseconds after which an idle mixer closes the audio line
+	 * and the mixing thread is stopped.
+	 */
+	private static final long IDLE_TIMEOUT = 30000;
+
+	/**
+	 * The size of buffer that is used to read decoded samples.
+	 */
+	private static final int READ_BUFFER_SIZE = 10240;
+
+	// ---------------------------------------------------------------------------------------------------
+	// Mixer instance
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * The mixer.
+	 */
+	private static AudioMixer instance = null;
+
+	/**
+	 * Returns the mixer.
+	 */
+	synchronized static AudioMixer getInstance() {
+		if (instance == null)
+			instance = new AudioMixer();
+
+		return instance;
+	}
+
+	/**
+	 * Returns the mixer, if it has been created.
+	 * 
+	 * @return the mixer or null, if the mixer has not been created yet.
+	 */
+	synchronized static AudioMixer getExistingInstance() {
+		return instance;
+	}
+
+	/**
+	 * Lock that guards the list of voices.
+	 */
+	private final Object lock = new Object();
+
+	/**
+	 * Active voices.
+	 */
+	private final Voice[] voices = new Voice[MAX_VOICES];
+
+	/**
+	 * Number of active voices.
+	 */
+	private int voiceCount = 0;
+
+	/**
+	 * Voices that were stolen by newer voices and whose listeners have not
+	 * been notified yet.
+	 */
+	private final List<Voice> stolenVoices = new ArrayList<Voice>();
+
+	/**
+	 * Sequence number of the last added voice.
+	 */
+	private long lastSequenceNumber = 0;
+
+	/**
+	 * The mixing thread or null, if the thread is not running.
+	 */
+	private Thread mixingThread = null;
+
+	/**
+	 * Private constructor.
+	 */
+	private AudioMixer() {
+	}
+
+	/**
+	 * Returns the number of voices that are currently played.
+	 *
+	 * @return the number of active voices
+	 */
+	int getActiveVoiceCount() {
+		synchronized (lock) {
+			return voiceCount;
+		}
+	}
+
+	/**
+	 * Adds a voice to the mixer.
+	 *
+	 * @param voice
+	 *            the voice
+	 */
+	void addVoice(Voice voice) {
+		synchronized (lock) {
+			if (voiceCount == MAX_VOICES) {
+				int oldestIdx = 0;
+				for (int i = 1; i < voiceCount; i++)
+					if (voices[i].sequenceNumber < voices[oldestIdx].sequenceNumber)
+						oldestIdx = i;
+
+				Voice stolenVoice = voices[oldestIdx];
+				stolenVoice.stop();
+				AudioClip.recordStolenVoice();
+				stolenVoices.add(stolenVoice);
+				voices[oldestIdx] = voices[--voiceCount];
+				voices[voiceCount] = null;
+			}
+
+			voice.sequenceNumber = ++lastSequenceNumber;
+			voices[voiceCount++] = voice;
+
+			if (mixingThread == null) {
+				mixingThread = new Thread(new Runnable() {
+					public void run() {
+						mix();
+					}
+				}, "JPAZ Audio Mixer");
+				mixingThread.setDaemon(true);
+				mixingThread.start();
+			} else {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Main loop of the mixing thread.
+	 */
+	private void mix() {
+		int[] mixBuffer = new int[CHUNK_FRAMES * 2];
+		byte[] outputBuffer = new byte[CHUNK_FRAMES * FORMAT.getFrameSize()];
+		Voice[] mixedVoices = new Voice[MAX_VOICES];
+		Voice[] finishedVoices = new Voice[MAX_VOICES];
+		Voice[] startedVoices = new Voice[MAX_VOICES];
+		List<Voice> stolen = new ArrayList<Voice>();
+		boolean previousChunkPlayed = false;
+
+		SourceDataLine line = null;
+		try {
+			line = AudioSystem.getSourceDataLine(FORMAT);
+			line.open(FORMAT, LINE_BUFFER_FRAMES * FORMAT.getFrameSize());
+			line.start();
+
+			while (true) {
+				// wait for voices
+				int mixedCount;
+				synchronized (lock) {
+					long idleStart = System.currentTimeMillis();
+					while ((voiceCount == 0) && stolenVoices.isEmpty()) {
+						long remaining = IDLE_TIMEOUT - (System.currentTimeMillis() - idleStart);
+						if (remaining <= 0) {
+							mixingThread = null;
+							return;
+						}
+
+						previousChunkPlayed = false;
+						lock.wait(remaining);
+					}
+
+					mixedCount = voiceCount;
+					System.arraycopy(voices, 0, mixedVoices, 0, mixedCount);
+					if (!stolenVoices.isEmpty()) {
+						stolen.addAll(stolenVoices);
+						stolenVoices.clear();
+					}
+				}
+
+				// notify listeners of stolen voices
+				if (!stolen.isEmpty()) {
+					for (Voice voice : stolen)
+						if (voice.listener != null)
+							voice.listener.voiceFinished(voice);
+
+					stolen.clear();
+				}
+
+				// mix voices
+				Arrays.fill(mixBuffer, 0);
+				int finishedCount = 0;
+				int startedCount = 0;
+				for (int i = 0; i < mixedCount; i++) {
+					if (!mixedVoices[i].started)
+						startedVoices[startedCount++] = mixedVoices[i];
+
+					if (mixedVoices[i].mixTo(mixBuffer, CHUNK_FRAMES))
+						finishedVoices[finishedCount++] = mixedVoices[i];
+
+					mixedVoices[i] = null;
+				}
+
+				// remove finished voices
+				if (finishedCount > 0) {
+					removeVoices(finishedVoices, finishedCount);
+					for (int i = 0; i < finishedCount; i++) {
+						if (finishedVoices[i].listener != null)
+							finishedVoices[i].listener.voiceFinished(finishedVoices[i]);
+
+						finishedVoices[i] = null;
+					}
+				}
+
+				// write mixed samples with clipping
+				int byteIdx = 0;
+				for (int i = 0; i < mixBuffer.length; i++) {
+					int sample = mixBuffer[i];
+					if (sample > Short.MAX_VALUE)
+						sample = Short.MAX_VALUE;
+					else if (sample < Short.MIN_VALUE)
+						sample = Short.MIN_VALUE;
+
+					outputBuffer[byteIdx++] = (byte) sample;
+					outputBuffer[byteIdx++] = (byte) (sample >> 8);
+				}
+
+				// detect underrun of continuous playing
+				if (previousChunkPlayed && (line.available() >= line.getBufferSize()))
+					AudioClip.recordUnderrun();
+
+				line.write(outputBuffer, 0, outputBuffer.length);
+				AudioClip.recordStreamedBytes(outputBuffer.length);
+				// a gap after the last voice finished is not an underrun
+				previousChunkPlayed = (mixedCount - finishedCount > 0);
+
+				// record latency of voices that have been started
+				if (startedCount > 0) {
+					long now = System.nanoTime();
+					long queuedBytes = Math.max(0, line.getBufferSize() - line.available() - outputBuffer.length);
+					long queuedNanos = (long) (queuedBytes / FORMAT.getFrameSize() * 1e9 / SAMPLE_RATE);
+					for (int i = 0; i < startedCount; i++) {
+						if (startedVoices[i].started)
+							AudioClip.recordStartLatency(now - startedVoices[i].requestTime + queuedNanos);
+
+						startedVoices[i] = null;
+					}
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Playing of an audio clip failed: " + e.toString());
+			stopAllVoices();
+		} finally {
+			if (line != null)
+				line.close();
+
+			synchronized (lock) {
+				if (mixingThread == Thread.currentThread())
+					mixingThread = null;
+			}
+		}
+	}
+
+	/**
+	 * Removes voices from the list of active voices.
+	 */
+	private void removeVoices(Voice[] toRemove, int count) {
+		synchronized (lock) {
+			for (int i = 0; i < count; i++) {
+				for (int j = 0; j < voiceCount; j++) {
+					if (voices[j] == toRemove[i]) {
+						voices[j] = voices[--voiceCount];
+						voices[voiceCount] = null;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Stops and removes all voices.
+	 */
+	private void stopAllVoices() {
+		Voice[] stoppedVoices;
+		int count;
+		synchronized (lock) {
+			stoppedVoices = new Voice[voiceCount + stolenVoices.size()];
+			System.arraycopy(voices, 0, stoppedVoices, 0, voiceCount);
+			for (int i = 0; i < stolenVoices.size(); i++)
+				stoppedVoices[voiceCount + i] = stolenVoices.get(i);
+
+			count = stoppedVoices.length;
+			Arrays.fill(voices, null);
+			voiceCount = 0;
+			stolenVoices.clear();
+		}
+
+		for (int i = 0; i < count; i++) {
+			stoppedVoices[i].stop();
+			if (stoppedVoices[i].listener != null)
+				stoppedVoices[i].listener.voiceFinished(stoppedVoices[i]);
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Conversion to the mixer format
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Reads samples of an audio stream and converts them to the canonical
+	 * format of the mixer.
+	 *
+	 * @param audioStream
+	 *            the audio stream
+	 * @return the interleaved stereo samples or null, if the audio format of
+	 *         the stream is not supported by the mixer.
+	 */
+	static short[] readSamples(AudioInputStream audioStream) throws IOException {
+		AudioFormat sourceFormat = audioStream.getFormat();
+		int channels = sourceFormat.getChannels();
+		float sampleRate = sourceFormat.getSampleRate();
+		if ((channels < 1) || (sampleRate <= 0))
+			return null;
+
+		// decode to 16 bit signed little-endian PCM
+		AudioFormat pcmFormat = new AudioFormat(sampleRate, 16, channels, true, false);
+		if (!sourceFormat.matches(pcmFormat)) {
+			if (!AudioSystem.isConversionSupported(pcmFormat, sourceFormat))
+				return null;
+
+			audioStream = AudioSystem.getAudioInputStream(pcmFormat, audioStream);
+		}
+
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+		int nBytesRead = 0;
+		while ((nBytesRead = audioStream.read(readBuffer)) != -1) {
+			bos.write(readBuffer, 0, nBytesRead);
+		}
+		byte[] data = bos.toByteArray();
+
+		// create stereo samples
+		int frameCount = data.length / (2 * channels);
+		short[] samples = new short[frameCount * 2];
+		int byteIdx = 0;
+		for (int i = 0; i < frameCount; i++) {
+			short left = (short) ((data[byteIdx] & 0xFF) | (data[byteIdx + 1] << 8));
+			short right = left;
+			if (channels > 1)
+				right = (short) ((data[byteIdx + 2] & 0xFF) | (data[byteIdx + 3] << 8));
+
+			samples[2 * i] = left;
+			samples[2 * i + 1] = right;
+			byteIdx += 2 * channels;
+		}
+
+		return resample(samples, sampleRate);
+	}
+
+	/**
+	 * Resamples stereo samples to the sample rate of the mixer using linear
+	 * interpolation.
+	 */
+	private static short[] resample(short[] samples, float sampleRate) {
+		if ((sampleRate == SAMPLE_RATE) || (samples.length == 0))
+			return samples;
+
+		int frameCount = samples.length / 2;
+		int resultFrameCount = (int) Math.max(1, (long) frameCount * SAMPLE_RATE / sampleRate);
+		double step = sampleRate / SAMPLE_RATE;
+		short[] result = new short[resultFrameCount * 2];
+		for (int i = 0; i < resultFrameCount; i++) {
+			double sourcePosition = i * step;
+			int frame = Math.min((int) sourcePosition, frameCount - 1);
+			int nextFrame = Math.min(frame + 1, frameCount - 1);
+			double ratio = sourcePosition - frame;
+			for (int c = 0; c < 2; c++) {
+				double value = samples[2 * frame + c] * (1 - ratio) + samples[2 * nextFrame + c] * ratio;
+				result[2 * i + c] = (short) Math.round(value);
+			}
+		}
+
+		return result;
+	}
+}
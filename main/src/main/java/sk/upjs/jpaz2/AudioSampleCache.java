@@ -0,0 +1,211 @@
+package sk.upjs.jpaz2;
+
+import java.io.IOException;
+import java.lang.ref.*;
+import java.net.URL;
+import java.util.*;
+
+import javax.sound.sampled.*;
+
+/**
+ * Internal cache of audio samples decoded to the canonical format of the
+ * audio mixer. Samples of an audio resource are decoded once and shared by all
+ * audio clips created for the same URL. Each entry is reference-counted by its
+ * owners (audio clips) and it is evicted as soon as all owners are garbage
+ * collected. Garbage collected owners are processed by a cleaner thread that
+ * runs while there is an owner of a cached entry.
+ */
+class AudioSampleCache {
+
+	/**
+	 * Cached samples of an audio resource.
+	 */
+	private static class Entry {
+		/**
+		 * Key of the entry.
+		 */
+		final String key;
+
+		/**
+		 * Immutable decoded samples.
+		 */
+		final short[] samples;
+
+		/**
+		 * Number of owners that use the samples.
+		 */
+		int referenceCount = 0;
+
+		Entry(String key, short[] samples) {
+			this.key = key;
+			this.samples = samples;
+		}
+	}
+
+	/**
+	 * Weak reference to an owner of a cache entry.
+	 */
+	private static class OwnerReference extends WeakReference<Object> {
+		/**
+		 * The entry used by the owner.
+		 */
+		final Entry entry;
+
+		OwnerReference(Object owner, Entry entry) {
+			super(owner, ownerQueue);
+			this.entry = entry;
+		}
+	}
+
+	/**
+	 * Cached entries.
+	 */
+	private static final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	/**
+	 * References to owners of entries. References are stored in order to
+	 * avoid their garbage collection.
+	 */
+	private static final Set<OwnerReference> ownerReferences = new HashSet<OwnerReference>();
+
+	/**
+	 * Queue of references to garbage collected owners.
+	 */
+	private static final ReferenceQueue<Object> ownerQueue = new ReferenceQueue<Object>();
+
+	/**
+	 * Thread that processes references to garbage collected owners or null,
+	 * if there is no running cleaner thread.
+	 */
+	private static Thread cleanerThread;
+
+	/**
+	 * Private constructor forbidding creation of class instances.
+	 */
+	private AudioSampleCache() {
+	}
+
+	/**
+	 * Returns samples of an audio resource converted to the format of the audio
+	 * mixer. The samples are shared until the owner is garbage collected and
+	 * they must not be modified.
+	 *
+	 * @param url
+	 *            the URL of the audio resource
+	 * @param owner
+	 *            the object that uses the samples
+	 * @return the samples or null, if the audio format of the resource is not
+	 *         supported by the audio mixer.
+	 */
+	static short[] acquire(URL url, Object owner) throws IOException, UnsupportedAudioFileException {
+		String key = url.toExternalForm();
+
+		synchronized (entries) {
+			expungeReleasedEntries();
+			Entry entry = entries.get(key);
+			if (entry != null)
+				return addOwner(entry, owner);
+		}
+
+		// decode samples that are not cached
+		short[] samples = null;
+		AudioInputStream audioIS = null;
+		try {
+			audioIS = AudioSystem.getAudioInputStream(url);
+			samples = AudioMixer.readSamples(audioIS);
+		} finally {
+			if (audioIS != null)
+				audioIS.close();
+		}
+
+		if (samples == null)
+			return null;
+
+		synchronized (entries) {
+			Entry entry = entries.get(key);
+			if (entry == null) {
+				entry = new Entry(key, samples);
+				entries.put(key, entry);
+			}
+
+			return addOwner(entry, owner);
+		}
+	}
+
+	/**
+	 * Registers a new owner of a cache entry.
+	 */
+	private static short[] addOwner(Entry entry, Object owner) {
+		entry.referenceCount++;
+		ownerReferences.add(new OwnerReference(owner, entry));
+		ensureCleanerThread();
+		return entry.samples;
+	}
+
+	/**
+	 * Starts the cleaner thread, if it is not running. The method must be
+	 * invoked while holding the lock of the entries.
+	 */
+	private static void ensureCleanerThread() {
+		if (cleanerThread != null)
+			return;
+
+		cleanerThread = new Thread(new Runnable() {
+			public void run() {
+				processReleasedOwners();
+			}
+		}, "JPAZ audio sample cache cleaner");
+		cleanerThread.setDaemon(true);
+		cleanerThread.start();
+	}
+
+	/**
+	 * Waits for references to garbage collected owners and evicts unused
+	 * entries. The method returns when there is no owner of a cached entry.
+	 */
+	private static void processReleasedOwners() {
+		while (true) {
+			Reference<?> reference;
+			try {
+				reference = ownerQueue.remove();
+			} catch (InterruptedException e) {
+				reference = null;
+			}
+
+			synchronized (entries) {
+				if (reference != null)
+					releaseOwner((OwnerReference) reference);
+
+				expungeReleasedEntries();
+				if (ownerReferences.isEmpty()) {
+					cleanerThread = null;
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Decreases reference counts of entries whose owners were garbage collected
+	 * and evicts unused entries.
+	 */
+	private static void expungeReleasedEntries() {
+		Reference<?> reference;
+		while ((reference = ownerQueue.poll()) != null)
+			releaseOwner((OwnerReference) reference);
+	}
+
+	/**
+	 * Decreases reference count of the entry used by a garbage collected owner
+	 * and evicts the entry, if it is unused.
+	 */
+	private static void releaseOwner(OwnerReference ownerReference) {
+		if (!ownerReferences.remove(ownerReference))
+			return;
+
+		Entry entry = ownerReference.entry;
+		entry.referenceCount--;
+		if ((entry.referenceCount <= 0) && (entries.get(entry.key) == entry))
+			entries.remove(entry.key);
+	}
+}
@@ -0,0 +1,75 @@
+package sk.upjs.jpaz2;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * List of listeners that are notified about changes of state of an object.
+ * Notifications are coarse-grained: a listener is informed that the state of
+ * the object may have changed, but not which part of the state changed.
+ * Listeners are notified in the thread that changed the object, so they
+ * should only record the notification.
+ */
+final class ChangeListenerList {
+
+	/**
+	 * The object whose changes are notified.
+	 */
+	private final Object source;
+
+	/**
+	 * Registered listeners.
+	 */
+	private final CopyOnWriteArrayList<ChangeListener> listeners = new CopyOnWriteArrayList<ChangeListener>();
+
+	/**
+	 * Event used to notify listeners. The event is created lazily.
+	 */
+	private volatile ChangeEvent event;
+
+	/**
+	 * Constructs an empty list of listeners.
+	 *
+	 * @param source
+	 *            the object whose changes are notified.
+	 */
+	ChangeListenerList(Object source) {
+		this.source = source;
+	}
+
+	/**
+	 * Adds a listener. If the listener is null or it is already registered, no
+	 * action is performed.
+	 */
+	void add(ChangeListener listener) {
+		if (listener != null) {
+			listeners.addIfAbsent(listener);
+		}
+	}
+
+	/**
+	 * Removes a listener.
+	 */
+	void remove(ChangeListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Notifies registered listeners that the state of the object has changed.
+	 */
+	void fireStateChanged() {
+		if (listeners.isEmpty()) {
+			return;
+		}
+
+		if (event == null) {
+			event = new ChangeEvent(source);
+		}
+
+		for (ChangeListener l : listeners) {
+			l.stateChanged(event);
+		}
+	}
+}
@@ -0,0 +1,285 @@
+package sk.upjs.jpaz2;
+
+import java.awt.*;
+import java.awt.image.*;
+import java.util.concurrent.*;
+
+/**
+ * Internal class that realizes color keying of images, i.e., replacing a key
+ * color by transparent color. Pixels are read and written directly in data
+ * buffers of images and rows of large images are processed in parallel.
+ */
+class ImageColorKeying {
+
+	/**
+	 * Minimal number of pixels of an image for which rows are processed in
+	 * parallel.
+	 */
+	private static final int PARALLEL_THRESHOLD = 256 * 256;
+
+	/**
+	 * Maximal number of rows processed by a single task.
+	 */
+	private static final int ROWS_PER_TASK = 64;
+
+	/**
+	 * Pool of threads for parallel processing of large images.
+	 */
+	private static ForkJoinPool pool = null;
+
+	// ---------------------------------------------------------------------------------------------------
+	// Processed image
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * The key color (with alpha channel set to 255).
+	 */
+	private final int keyColor;
+
+	/**
+	 * The source image.
+	 */
+	private final BufferedImage source;
+
+	/**
+	 * Pixels of the source image, if stored in an int buffer.
+	 */
+	private int[] intData;
+
+	/**
+	 * Pixels of the source image, if stored in a byte buffer.
+	 */
+	private byte[] byteData;
+
+	/**
+	 * Whether the source image has alpha channel.
+	 */
+	private boolean hasAlpha;
+
+	/**
+	 * Whether pixels of the source image are premultiplied.
+	 */
+	private boolean premultiplied;
+
+	/**
+	 * Index of the first pixel of the source image in the data buffer.
+	 */
+	private int dataOffset;
+
+	/**
+	 * Distance between starts of consecutive rows in the data buffer.
+	 */
+	private int scanlineStride;
+
+	/**
+	 * Distance between consecutive pixels in the byte buffer.
+	 */
+	private int pixelStride;
+
+	/**
+	 * Offsets of red, green, blue and alpha components in the byte buffer.
+	 */
+	private int[] bandOffsets;
+
+	/**
+	 * Pixels of the resulting image.
+	 */
+	private int[] resultData;
+
+	/**
+	 * Width of processed images.
+	 */
+	private final int width;
+
+	/**
+	 * Constructs the color keying of an image.
+	 */
+	private ImageColorKeying(BufferedImage image, int keyColor) {
+		this.keyColor = keyColor;
+		this.width = image.getWidth();
+		this.source = prepareSource(image);
+	}
+
+	/**
+	 * Prepares direct access to pixels of the source image. If there is no
+	 * supported layout of pixels, the image is converted.
+	 */
+	private BufferedImage prepareSource(BufferedImage image) {
+		int type = image.getType();
+		WritableRaster raster = image.getRaster();
+		SampleModel sm = raster.getSampleModel();
+
+		if ((type == BufferedImage.TYPE_INT_ARGB) || (type == BufferedImage.TYPE_INT_ARGB_PRE)
+				|| (type == BufferedImage.TYPE_INT_RGB)) {
+			DataBufferInt buffer = (DataBufferInt) raster.getDataBuffer();
+			intData = buffer.getData();
+			scanlineStride = ((SinglePixelPackedSampleModel) sm).getScanlineStride();
+			dataOffset = buffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+					- raster.getSampleModelTranslateX();
+			hasAlpha = (type != BufferedImage.TYPE_INT_RGB);
+			premultiplied = (type == BufferedImage.TYPE_INT_ARGB_PRE);
+			return image;
+		}
+
+		if ((type == BufferedImage.TYPE_4BYTE_ABGR) || (type == BufferedImage.TYPE_3BYTE_BGR)) {
+			DataBufferByte buffer = (DataBufferByte) raster.getDataBuffer();
+			ComponentSampleModel csm = (ComponentSampleModel) sm;
+			byteData = buffer.getData();
+			scanlineStride = csm.getScanlineStride();
+			pixelStride = csm.getPixelStride();
+			bandOffsets = csm.getBandOffsets();
+			dataOffset = buffer.getOffset() - raster.getSampleModelTranslateY() * scanlineStride
+					- raster.getSampleModelTranslateX() * pixelStride;
+			hasAlpha = (type == BufferedImage.TYPE_4BYTE_ABGR);
+			premultiplied = false;
+			return image;
+		}
+
+		BufferedImage converted = new BufferedImage(image.getWidth(), image.getHeight(),
+				BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g2 = converted.createGraphics();
+		g2.setComposite(AlphaComposite.Src);
+		g2.drawImage(image, 0, 0, null);
+		g2.dispose();
+		return prepareSource(converted);
+	}
+
+	/**
+	 * Processes rows of the source image.
+	 *
+	 * @param fromRow
+	 *            the first processed row (inclusive)
+	 * @param toRow
+	 *            the last processed row (exclusive)
+	 */
+	private void processRows(int fromRow, int toRow) {
+		for (int y = fromRow; y < toRow; y++) {
+			int resultIdx = y * width;
+			if (intData != null) {
+				int idx = dataOffset + y * scanlineStride;
+				for (int x = 0; x < width; x++) {
+					int pixel = intData[idx++];
+					if (!hasAlpha)
+						pixel |= 0xFF000000;
+
+					resultData[resultIdx++] = keyPixel(pixel, x, y);
+				}
+			} else {
+				int idx = dataOffset + y * scanlineStride;
+				int rOffset = bandOffsets[0];
+				int gOffset = bandOffsets[1];
+				int bOffset = bandOffsets[2];
+				int aOffset = hasAlpha ? bandOffsets[3] : 0;
+				for (int x = 0; x < width; x++) {
+					int alpha = hasAlpha ? (byteData[idx + aOffset] & 0xFF) : 0xFF;
+					int pixel = (alpha << 24) | ((byteData[idx + rOffset] & 0xFF) << 16)
+							| ((byteData[idx + gOffset] & 0xFF) << 8) | (byteData[idx + bOffset] & 0xFF);
+					idx += pixelStride;
+
+					resultData[resultIdx++] = keyPixel(pixel, x, y);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the premultiplied value of a pixel after color keying.
+	 */
+	private int keyPixel(int pixel, int x, int y) {
+		int alpha = pixel >>> 24;
+		if (alpha == 0)
+			return 0;
+
+		if (alpha == 0xFF)
+			return (pixel == keyColor) ? 0 : pixel;
+
+		// partially transparent pixel
+		if (premultiplied) {
+			return ((source.getRGB(x, y) | 0xFF000000) == keyColor) ? 0 : pixel;
+		}
+
+		if ((pixel | 0xFF000000) == keyColor)
+			return 0;
+
+		int r = ((pixel >> 16) & 0xFF) * alpha + 127;
+		int g = ((pixel >> 8) & 0xFF) * alpha + 127;
+		int b = (pixel & 0xFF) * alpha + 127;
+		return (alpha << 24) | ((r / 255) << 16) | ((g / 255) << 8) | (b / 255);
+	}
+
+	/**
+	 * Task processing a range of rows in parallel.
+	 */
+	@SuppressWarnings("serial")
+	private class RowsTask extends RecursiveAction {
+
+		/**
+		 * The first processed row (inclusive).
+		 */
+		private final int fromRow;
+
+		/**
+		 * The last processed row (exclusive).
+		 */
+		private final int toRow;
+
+		RowsTask(int fromRow, int toRow) {
+			this.fromRow = fromRow;
+			this.toRow = toRow;
+		}
+
+		@Override
+		protected void compute() {
+			if (toRow - fromRow <= ROWS_PER_TASK) {
+				processRows(fromRow, toRow);
+			} else {
+				int middleRow = (fromRow + toRow) >>> 1;
+				invokeAll(new RowsTask(fromRow, middleRow), new RowsTask(middleRow, toRow));
+			}
+		}
+	}
+
+	/**
+	 * Creates the resulting image.
+	 */
+	private BufferedImage createResult() {
+		int height = source.getHeight();
+		BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		resultData = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
+
+		if ((long) width * height >= PARALLEL_THRESHOLD)
+			getPool().invoke(new RowsTask(0, height));
+		else
+			processRows(0, height);
+
+		resultData = null;
+		return result;
+	}
+
+	/**
+	 * Returns the pool of threads for parallel processing.
+	 */
+	private static synchronized ForkJoinPool getPool() {
+		if (pool == null)
+			pool = new ForkJoinPool();
+
+		return pool;
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Public interface
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a copy of the image in which the color of the pixel in the
+	 * top-left corner is replaced by transparent color.
+	 *
+	 * @param image
+	 *            the image
+	 * @return the image of type TYPE_INT_ARGB_PRE with transparent color
+	 *         instead of the top-left color.
+	 */
+	public static BufferedImage replaceTopLeftColorToTransparent(BufferedImage image) {
+		return new ImageColorKeying(image, image.getRGB(0, 0) | 0xFF000000).createResult();
+	}
+}
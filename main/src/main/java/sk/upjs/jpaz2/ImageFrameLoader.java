@@ -24,6 +24,12 @@ class ImageFrameLoader {
 	 */
 	private ArrayList<Long> delays = null;
 
+	/**
+	 * Indicates whether frames of palette-based images should be kept as
+	 * indexed-color images (if possible).
+	 */
+	private boolean indexedColorRetained = false;
+
 	// ---------------------------------------------------------------------------------------------------
 	// Variables for loading animated gifs
 	// ---------------------------------------------------------------------------------------------------
@@ -280,6 +286,151 @@ class ImageFrameLoader {
 			delays.add((long) (durations[i] * 10));
 	}
 
+	/**
+	 * Processes frames of a gif image according to metadata records and
+	 * composes them as indexed-color images. It is possible only if all frames
+	 * share the same palette and there is a palette index that can be used as
+	 * a transparent color.
+	 * 
+	 * @return true, if frames were processed, false otherwise
+	 */
+	private boolean processIndexedGifFrames() {
+		// check palettes of all frames
+		IndexColorModel palette = null;
+		for (int i = 0; i < images.length; i++) {
+			if (!(images[i] instanceof BufferedImage))
+				return false;
+
+			ColorModel cm = ((BufferedImage) images[i]).getColorModel();
+			if (!(cm instanceof IndexColorModel))
+				return false;
+
+			IndexColorModel icm = (IndexColorModel) cm;
+			if (palette == null) {
+				palette = icm;
+			} else if (!haveSamePalette(palette, icm)) {
+				return false;
+			}
+		}
+
+		// find index of transparent color: a new palette entry if the palette
+		// is not full, otherwise the transparent index shared by all frames
+		int paletteSize = palette.getMapSize();
+		int transparentIdx;
+		if (paletteSize < 256) {
+			transparentIdx = paletteSize;
+		} else {
+			transparentIdx = palette.getTransparentPixel();
+			if (transparentIdx < 0)
+				return false;
+
+			for (int i = 0; i < images.length; i++)
+				if (((IndexColorModel) ((BufferedImage) images[i]).getColorModel())
+						.getTransparentPixel() != transparentIdx)
+					return false;
+		}
+
+		// create color model of frames
+		int targetSize = Math.max(paletteSize, transparentIdx + 1);
+		byte[] reds = new byte[targetSize];
+		byte[] greens = new byte[targetSize];
+		byte[] blues = new byte[targetSize];
+		for (int i = 0; i < paletteSize; i++) {
+			reds[i] = (byte) palette.getRed(i);
+			greens[i] = (byte) palette.getGreen(i);
+			blues[i] = (byte) palette.getBlue(i);
+		}
+		IndexColorModel colorModel = new IndexColorModel(8, targetSize, reds, greens, blues, transparentIdx);
+
+		// compute image size
+		int width = 0;
+		int height = 0;
+
+		for (int i = 0; i < images.length; i++) {
+			width = Math.max(width, images[i].getWidth(null) + xOffsets[i]);
+			height = Math.max(height, images[i].getHeight(null) + yOffsets[i]);
+		}
+
+		// construct gif frames
+		ArrayList<BufferedImage> indexedFrames = new ArrayList<BufferedImage>();
+		byte[][] frameData = new byte[images.length][];
+		int[] rowIndices = null;
+		for (int i = 0; i < images.length; i++) {
+			BufferedImage frame = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+			byte[] data = ((DataBufferByte) frame.getRaster().getDataBuffer()).getData();
+			frameData[i] = data;
+
+			// prepare background according to disposal method of the previous
+			// frame
+			int disposeToIdx = -1;
+			if (i > 0) {
+				Disposal disposalMethod = disposalMethods[i - 1];
+				if (disposalMethod.equals(Disposal.DO_NOT_DISPOSE)) {
+					disposeToIdx = i - 1;
+				} else if (disposalMethod.equals(Disposal.RESTORE_TO_PREVIOUS)) {
+					for (int prevIdx = i - 2; prevIdx >= 0; prevIdx--)
+						if (disposalMethods[prevIdx].equals(Disposal.UNSPECIFIED)
+								|| disposalMethods[prevIdx].equals(Disposal.DO_NOT_DISPOSE)) {
+							disposeToIdx = prevIdx;
+							break;
+						}
+				}
+			}
+
+			if (disposeToIdx >= 0)
+				System.arraycopy(frameData[disposeToIdx], 0, data, 0, data.length);
+			else
+				java.util.Arrays.fill(data, (byte) transparentIdx);
+
+			// draw content (transparent pixels of the frame are skipped)
+			BufferedImage image = (BufferedImage) images[i];
+			Raster raster = image.getRaster();
+			int frameTransparentIdx = ((IndexColorModel) image.getColorModel()).getTransparentPixel();
+			int xOffset = xOffsets[i];
+			int yOffset = yOffsets[i];
+			int imageWidth = image.getWidth();
+			if ((rowIndices == null) || (rowIndices.length < imageWidth))
+				rowIndices = new int[imageWidth];
+
+			for (int y = 0; y < image.getHeight(); y++) {
+				raster.getPixels(0, y, imageWidth, 1, rowIndices);
+				int offset = (y + yOffset) * width + xOffset;
+				for (int x = 0; x < imageWidth; x++) {
+					int idx = rowIndices[x];
+					if (idx != frameTransparentIdx)
+						data[offset + x] = (byte) idx;
+				}
+			}
+
+			// add created frame to the list of generated frames
+			indexedFrames.add(frame);
+		}
+
+		frames = indexedFrames;
+
+		// compute delays
+		delays = new ArrayList<Long>();
+		for (int i = 0; i < durations.length; i++)
+			delays.add((long) (durations[i] * 10));
+
+		return true;
+	}
+
+	/**
+	 * Returns whether two color models have the same palette.
+	 */
+	private static boolean haveSamePalette(IndexColorModel cm1, IndexColorModel cm2) {
+		if (cm1.getMapSize() != cm2.getMapSize())
+			return false;
+
+		for (int i = 0; i < cm1.getMapSize(); i++)
+			if ((cm1.getRed(i) != cm2.getRed(i)) || (cm1.getGreen(i) != cm2.getGreen(i))
+					|| (cm1.getBlue(i) != cm2.getBlue(i)))
+				return false;
+
+		return true;
+	}
+
 	/**
 	 * Processes a single frame image.
 	 */
@@ -324,9 +475,10 @@ class ImageFrameLoader {
 					&& (disposalMethods != null);
 
 			// process input
-			if ((images.length > 1) && (gifMetadata))
-				processGifFrames();
-			else
+			if ((images.length > 1) && (gifMetadata)) {
+				if (!indexedColorRetained || !processIndexedGifFrames())
+					processGifFrames();
+			} else
 				processSingleFrame();
 
 		} catch (Exception e) {
@@ -342,6 +494,19 @@ class ImageFrameLoader {
 		}
 	}
 
+	/**
+	 * Sets whether frames of palette-based images (e.g., GIF) should be kept
+	 * as indexed-color images. If it is not possible (e.g., frames of an
+	 * animated gif have different palettes), frames are composed as ARGB
+	 * images.
+	 * 
+	 * @param indexedColorRetained
+	 *            true, if indexed-color frames are preferred, false otherwise
+	 */
+	public void setIndexedColorRetained(boolean indexedColorRetained) {
+		this.indexedColorRetained = indexedColorRetained;
+	}
+
 	/**
 	 * Returns list of loaded image frames.
 	 * 
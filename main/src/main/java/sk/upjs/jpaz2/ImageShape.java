@@ -5,6 +5,7 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.image.*;
 import java.io.*;
+import java.lang.ref.SoftReference;
 import java.net.*;
 
 import javax.imageio.*;
@@ -66,6 +67,12 @@ public class ImageShape implements TurtleShape {
 		 */
 		private boolean transparentExcludedFromShape = true;
 
+		/**
+		 * Whether frames of palette-based images are stored as indexed-color
+		 * images.
+		 */
+		private boolean indexedColorStorage = false;
+
 		/**
 		 * Constructs a builder of a shape from image with given URL.
 		 * 
@@ -352,6 +359,32 @@ public class ImageShape implements TurtleShape {
 			return this;
 		}
 
+		/**
+		 * Returns whether frames of palette-based images (e.g., GIF images)
+		 * are stored as indexed-color images.
+		 * 
+		 * @return true, if indexed-color storage is used, false otherwise.
+		 */
+		public boolean isIndexedColorStorage() {
+			return indexedColorStorage;
+		}
+
+		/**
+		 * Sets whether frames of palette-based images (e.g., GIF images) are
+		 * stored as indexed-color images with 1 byte per pixel instead of
+		 * 32-bit ARGB images. Indexed frames are expanded to ARGB images only
+		 * when they are painted and the expanded images can be released when
+		 * the memory is low.
+		 * 
+		 * @param indexedColorStorage
+		 *            true, if indexed-color storage is used, false otherwise.
+		 * @return a reference to this object
+		 */
+		public Builder setIndexedColorStorage(boolean indexedColorStorage) {
+			this.indexedColorStorage = indexedColorStorage;
+			return this;
+		}
+
 	}
 
 	// ---------------------------------------------------------------------------------------------------
@@ -410,6 +443,12 @@ public class ImageShape implements TurtleShape {
 	 */
 	private int frameHeight;
 
+	/**
+	 * Cache of ARGB images created from indexed-color frames (if indexed-color
+	 * storage is used).
+	 */
+	private SoftReference<BufferedImage>[][] expandedFrames;
+
 	// ---------------------------------------------------------------------------------------------------
 	// Constructors
 	// ---------------------------------------------------------------------------------------------------
@@ -543,6 +582,7 @@ public class ImageShape implements TurtleShape {
 				imageStream = ImageIO.createImageInputStream(builder.getURL().openStream());
 
 				ImageFrameLoader frameLoader = new ImageFrameLoader();
+				frameLoader.setIndexedColorRetained(builder.isIndexedColorStorage());
 				frameLoader.loadFramesFromStream(imageStream);
 				images = frameLoader.getFrames();
 
@@ -589,7 +629,8 @@ public class ImageShape implements TurtleShape {
 			for (int i = 0; i < images.size(); i++) {
 				// store frame
 				if (builder.isTopLeftToTransparentColor())
-					frames[viewIdx][frameIdx] = replaceTopLeftColorToTransparent(images.get(i));
+					frames[viewIdx][frameIdx] = replaceTopLeftColorToTransparent(images.get(i),
+							builder.isIndexedColorStorage());
 				else
 					frames[viewIdx][frameIdx] = images.get(i);
 
@@ -605,7 +646,7 @@ public class ImageShape implements TurtleShape {
 			BufferedImage fullImage = images.get(0);
 
 			if (builder.isTopLeftToTransparentColor())
-				fullImage = replaceTopLeftColorToTransparent(fullImage);
+				fullImage = replaceTopLeftColorToTransparent(fullImage, builder.isIndexedColorStorage());
 
 			frames = splitToFrames(fullImage, viewCount, frameCount, builder.areFramesInRows());
 			frameWidth = frames[0][0].getWidth();
@@ -632,6 +673,18 @@ public class ImageShape implements TurtleShape {
 
 		// exclusion of transparent pixels
 		transparentExcludedFromShape = builder.isTransparentExcludedFromShape();
+
+		// prepare cache for expanded indexed-color frames
+		if (builder.isIndexedColorStorage())
+			expandedFrames = createExpandedFramesCache(viewCount, frameCount);
+	}
+
+	/**
+	 * Creates an empty cache for expanded frames.
+	 */
+	@SuppressWarnings("unchecked")
+	private static SoftReference<BufferedImage>[][] createExpandedFramesCache(int viewCount, int frameCount) {
+		return (SoftReference<BufferedImage>[][]) new SoftReference<?>[viewCount][frameCount];
 	}
 
 	/**
@@ -666,28 +719,65 @@ public class ImageShape implements TurtleShape {
 	/**
 	 * Replaces color of the pixel in the top-left corner by transparent color
 	 */
-	private BufferedImage replaceTopLeftColorToTransparent(BufferedImage image) {
-		final long topLeftColor = image.getRGB(0, 0) | 0xFF000000;
+	private BufferedImage replaceTopLeftColorToTransparent(BufferedImage image, boolean indexedColorStorage) {
+		if (indexedColorStorage && (image.getColorModel() instanceof IndexColorModel))
+			return replaceTopLeftColorToTransparentIndex(image);
 
-		ImageFilter filter = new RGBImageFilter() {
-			public final int filterRGB(int x, int y, int rgb) {
-				if ((rgb | 0xFF000000) == topLeftColor)
-					return 0x00FFFFFF & rgb;
-				else
-					return rgb;
-			}
-		};
+		return ImageColorKeying.replaceTopLeftColorToTransparent(image);
+	}
 
-		ImageProducer ip = new FilteredImageSource(image.getSource(), filter);
-		Image trasparentImage = Toolkit.getDefaultToolkit().createImage(ip);
+	/**
+	 * Replaces color of the pixel in the top-left corner of an indexed-color
+	 * image by transparent color. Instead of recoloring pixels, palette
+	 * entries with the color are made transparent and the raster is shared.
+	 */
+	private BufferedImage replaceTopLeftColorToTransparentIndex(BufferedImage image) {
+		IndexColorModel cm = (IndexColorModel) image.getColorModel();
+		int topLeftColor = image.getRGB(0, 0);
+		if ((topLeftColor & 0xFF000000) == 0)
+			topLeftColor = 0;
+		topLeftColor |= 0xFF000000;
+
+		int mapSize = cm.getMapSize();
+		byte[] reds = new byte[mapSize];
+		byte[] greens = new byte[mapSize];
+		byte[] blues = new byte[mapSize];
+		byte[] alphas = new byte[mapSize];
+		cm.getReds(reds);
+		cm.getGreens(greens);
+		cm.getBlues(blues);
+		cm.getAlphas(alphas);
+		for (int i = 0; i < mapSize; i++)
+			if ((alphas[i] != 0) && ((cm.getRGB(i) | 0xFF000000) == topLeftColor))
+				alphas[i] = 0;
+
+		IndexColorModel transparentCm = new IndexColorModel(cm.getPixelSize(), mapSize, reds, greens, blues, alphas);
+		return new BufferedImage(transparentCm, image.getRaster(), false, null);
+	}
 
-		BufferedImage result = new BufferedImage(image.getWidth(null), image.getHeight(null),
-				BufferedImage.TYPE_INT_ARGB_PRE);
-		Graphics2D g2 = result.createGraphics();
-		g2.drawImage(trasparentImage, 0, 0, null);
+	/**
+	 * Returns image of a frame that is suitable for painting. Indexed-color
+	 * frames are expanded to unscaled ARGB images that are cached until the
+	 * memory is low. Scaling is realized when the frame is painted, so that
+	 * the cached image is shared by all sizes.
+	 */
+	private BufferedImage getPaintableFrame(int viewIdx, int frameIdx) {
+		BufferedImage frame = frames[viewIdx][frameIdx];
+		if ((expandedFrames == null) || !(frame.getColorModel() instanceof IndexColorModel))
+			return frame;
+
+		SoftReference<BufferedImage> cacheRecord = expandedFrames[viewIdx][frameIdx];
+		BufferedImage expandedFrame = (cacheRecord != null) ? cacheRecord.get() : null;
+		if (expandedFrame != null)
+			return expandedFrame;
+
+		expandedFrame = new BufferedImage(frame.getWidth(), frame.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+		Graphics2D g2 = expandedFrame.createGraphics();
+		g2.drawImage(frame, 0, 0, null);
 		g2.dispose();
 
-		return result;
+		expandedFrames[viewIdx][frameIdx] = new SoftReference<BufferedImage>(expandedFrame);
+		return expandedFrame;
 	}
 
 	// ---------------------------------------------------------------------------------------------------
@@ -786,15 +876,16 @@ public class ImageShape implements TurtleShape {
 				g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) (1 - shapeTransparency)));
 			}
 
-			// draw image with desired scale
-			BufferedImage currentFrame = frames[t.getViewIndex()][t.getFrameIndex()];
-			if (rescaleNeeded) {
+			// draw image with desired scale (indexed-color frames are drawn
+			// from the cache of expanded frames)
+			BufferedImage currentFrame = getPaintableFrame(t.getViewIndex(), t.getFrameIndex());
+			if (!rescaleNeeded) {
+				g.translate(-xCenter, -yCenter);
+				g.drawImage(currentFrame, null, 0, 0);
+			} else {
 				g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
 				g.translate(-xCenter * scale, -yCenter * scale);
 				g.drawImage(currentFrame, 0, 0, scaledFrameWidth, scaledFrameHeight, null);
-			} else {
-				g.translate(-xCenter, -yCenter);
-				g.drawImage(currentFrame, null, 0, 0);
 			}
 
 			if (shapeTransparency != 0)
@@ -818,7 +909,7 @@ public class ImageShape implements TurtleShape {
 			if ((viewIdx < 0) || (frameIdx < 0) || (viewIdx >= viewCount) || (frameIdx >= frameCount))
 				return;
 
-			g.drawImage(frames[viewIdx][frameIdx], null, 0, 0);
+			g.drawImage(getPaintableFrame(viewIdx, frameIdx), null, 0, 0);
 		}
 	}
 
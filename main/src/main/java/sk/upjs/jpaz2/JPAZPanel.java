@@ -2,7 +2,6 @@ package sk.upjs.jpaz2;
 
 import java.awt.*;
 import java.awt.event.*;
-import java.awt.image.BufferedImage;
 
 import javax.swing.*;
 
@@ -14,9 +13,10 @@ import javax.swing.*;
 @SuppressWarnings("serial")
 public class JPAZPanel extends JPanel {
 	/**
-	 * Pane that is contained in this panel
+	 * Pane that is contained in this panel. The field is volatile since it is
+	 * read without the JPAZ lock when input events are buffered.
 	 */
-	private Pane pane;
+	private volatile Pane pane;
 
 	/**
 	 * Indicates whether the pane is aligned in the panel. If aligned, any
@@ -36,12 +36,6 @@ public class JPAZPanel extends JPanel {
 	 */
 	private PaneChangeListener paneChangeListener = null;
 
-	/**
-	 * Backbuffer for the case of rotated bound pane, when drawing performance
-	 * is significantly slow.
-	 */
-	private BufferedImage backbuffer = null;
-
 	/**
 	 * JFrame that should be repacked in case of resize event from the bound
 	 * pane.
@@ -68,6 +62,35 @@ public class JPAZPanel extends JPanel {
 		}
 	};
 
+	/**
+	 * The latest mouse motion event that waits for dispatching. Bursts of
+	 * mouse motion events are coalesced to the latest event. The field is
+	 * accessed only from the Swing's EDT.
+	 */
+	private MouseEvent pendingMotionEvent = null;
+
+	/**
+	 * Type of the pending mouse motion event.
+	 */
+	private int pendingMotionType;
+
+	/**
+	 * Indicates whether dispatching of the pending mouse motion event is
+	 * scheduled.
+	 */
+	private boolean motionDispatchScheduled = false;
+
+	/**
+	 * Runnable that dispatches the pending mouse motion event.
+	 */
+	private final Runnable motionDispatchRunnable = new Runnable() {
+		@Override
+		public void run() {
+			motionDispatchScheduled = false;
+			flushPendingMotionEvent();
+		}
+	};
+
 	/**
 	 * Cursor to be show when the point is clickable.
 	 */
@@ -408,20 +431,20 @@ public class JPAZPanel extends JPanel {
 					JPAZPanel.this.requestFocusInWindow();
 				}
 
-				fireMouseEventInBoundPane(MouseEvent.MOUSE_CLICKED, e);
-				updateCursor(e);
+				flushPendingMotionEvent();
+				fireMouseEventInBoundPane(MouseEvent.MOUSE_CLICKED, e, true);
 			}
 
 			@Override
 			public void mousePressed(MouseEvent e) {
-				fireMouseEventInBoundPane(MouseEvent.MOUSE_PRESSED, e);
-				updateCursor(e);
+				flushPendingMotionEvent();
+				fireMouseEventInBoundPane(MouseEvent.MOUSE_PRESSED, e, true);
 			}
 
 			@Override
 			public void mouseReleased(MouseEvent e) {
-				fireMouseEventInBoundPane(MouseEvent.MOUSE_RELEASED, e);
-				updateCursor(e);
+				flushPendingMotionEvent();
+				fireMouseEventInBoundPane(MouseEvent.MOUSE_RELEASED, e, true);
 			}
 		});
 
@@ -429,13 +452,12 @@ public class JPAZPanel extends JPanel {
 		this.addMouseMotionListener(new MouseMotionAdapter() {
 			@Override
 			public void mouseMoved(MouseEvent e) {
-				fireMouseEventInBoundPane(MouseEvent.MOUSE_MOVED, e);
-				updateCursor(e);
+				postMotionEvent(MouseEvent.MOUSE_MOVED, e);
 			}
 
 			@Override
 			public void mouseDragged(MouseEvent e) {
-				fireMouseEventInBoundPane(MouseEvent.MOUSE_DRAGGED, e);
+				postMotionEvent(MouseEvent.MOUSE_DRAGGED, e);
 			}
 		});
 
@@ -443,30 +465,136 @@ public class JPAZPanel extends JPanel {
 		this.addKeyListener(new KeyAdapter() {
 			@Override
 			public void keyPressed(KeyEvent e) {
+				flushPendingMotionEvent();
 				fireKeyEventInBoundPane(KeyEvent.KEY_PRESSED, e);
 			}
 
 			@Override
 			public void keyReleased(KeyEvent e) {
+				flushPendingMotionEvent();
 				fireKeyEventInBoundPane(KeyEvent.KEY_RELEASED, e);
 			}
 
 			@Override
 			public void keyTyped(KeyEvent e) {
+				flushPendingMotionEvent();
 				fireKeyEventInBoundPane(KeyEvent.KEY_TYPED, e);
 			}
 		});
 	}
 
-	private void fireMouseEventInBoundPane(int type, MouseEvent e) {
+	/**
+	 * Posts a mouse motion event for dispatching. Mouse motion events received
+	 * before the dispatching are coalesced to the latest event of the same
+	 * type.
+	 * 
+	 * @param type
+	 *            the type of the event (MOUSE_MOVED or MOUSE_DRAGGED).
+	 * @param e
+	 *            the detail of event.
+	 */
+	private void postMotionEvent(int type, MouseEvent e) {
+		if ((pendingMotionEvent != null) && (pendingMotionType != type))
+			flushPendingMotionEvent();
+
+		pendingMotionEvent = e;
+		pendingMotionType = type;
+		if (!motionDispatchScheduled) {
+			motionDispatchScheduled = true;
+			SwingUtilities.invokeLater(motionDispatchRunnable);
+		}
+	}
+
+	/**
+	 * Dispatches the pending mouse motion event (if there is any). It is
+	 * called before any other input event is dispatched in order to preserve
+	 * the order of events.
+	 */
+	private void flushPendingMotionEvent() {
+		MouseEvent e = pendingMotionEvent;
+		if (e == null)
+			return;
+
+		pendingMotionEvent = null;
+		fireMouseEventInBoundPane(pendingMotionType, e, pendingMotionType == MouseEvent.MOUSE_MOVED);
+	}
+
+	/**
+	 * Forwards a mouse event to the bound pane. If the bound pane has enabled
+	 * buffered input mode, the event is only stored in the queue of the pane.
+	 * 
+	 * @param type
+	 *            the type of the event.
+	 * @param e
+	 *            the detail of event.
+	 * @param cursorUpdate
+	 *            true, if the cursor should be updated after the event is
+	 *            dispatched.
+	 */
+	private void fireMouseEventInBoundPane(final int type, final MouseEvent e, final boolean cursorUpdate) {
+		final Pane boundPane = pane;
+		if ((boundPane != null) && boundPane.isInputBuffered() && boundPane.bufferInputEvent(new Runnable() {
+			public void run() {
+				if (pane == boundPane)
+					dispatchMouseEvent(type, e, cursorUpdate);
+			}
+		})) {
+			return;
+		}
+
+		dispatchMouseEvent(type, e, cursorUpdate);
+	}
+
+	/**
+	 * Dispatches a mouse event to the bound pane. If the event is dispatched
+	 * outside of the EDT (from the input buffer), the cursor update is posted
+	 * to the EDT.
+	 */
+	private void dispatchMouseEvent(int type, MouseEvent e, boolean cursorUpdate) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
 			if ((pane != null) && (transition == null)) {
 				pane.fireMouseEvent(e.getX(), e.getY(), type, e, alignMode);
 			}
+
+			if (cursorUpdate) {
+				if (SwingUtilities.isEventDispatchThread()) {
+					updateCursor(e);
+				} else {
+					lastMousePosition.x = e.getX();
+					lastMousePosition.y = e.getY();
+					SwingUtilities.invokeLater(updateCursorRunnable);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Forwards a key event to the bound pane. If the bound pane has enabled
+	 * buffered input mode, the event is only stored in the queue of the pane.
+	 * 
+	 * @param type
+	 *            the type of the event.
+	 * @param e
+	 *            the detail of event.
+	 */
+	private void fireKeyEventInBoundPane(final int type, final KeyEvent e) {
+		final Pane boundPane = pane;
+		if ((boundPane != null) && boundPane.isInputBuffered() && boundPane.bufferInputEvent(new Runnable() {
+			public void run() {
+				if (pane == boundPane)
+					dispatchKeyEvent(type, e);
+			}
+		})) {
+			return;
 		}
+
+		dispatchKeyEvent(type, e);
 	}
 
-	private void fireKeyEventInBoundPane(int type, KeyEvent e) {
+	/**
+	 * Dispatches a key event to the bound pane.
+	 */
+	private void dispatchKeyEvent(int type, KeyEvent e) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
 			if ((pane != null) && (transition == null))
 				pane.fireKeyEvent(type, e);
@@ -551,31 +679,13 @@ public class JPAZPanel extends JPanel {
 				return;
 			}
 
+			// rotated panes are drawn from their cached rotated images, so
+			// no additional backbuffer is required
 			Graphics2D g2d = (Graphics2D) g;
 			if (alignMode) {
-				backbuffer = null;
 				pane.paintWithoutTransform(g2d);
 			} else {
-				if (pane.getRotation() == 0) {
-					backbuffer = null;
-					pane.paintToPaneGraphics(g2d);
-				} else {
-					// create backbuffer, if necessary
-					if ((backbuffer == null) || (backbuffer.getWidth() != getWidth())
-							|| (backbuffer.getHeight() != getHeight())) {
-						backbuffer = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
-					}
-
-					// clean backbuffer and then draw the content
-					Graphics2D dbg = backbuffer.createGraphics();
-					dbg.setBackground(new Color(0, 0, 0, 0));
-					dbg.clearRect(0, 0, backbuffer.getWidth(), backbuffer.getHeight());
-					pane.paintToPaneGraphics(dbg);
-					dbg.dispose();
-
-					// draw backbuffer to the graphics
-					g2d.drawImage(backbuffer, null, 0, 0);
-				}
+				pane.paintToPaneGraphics(g2d);
 			}
 		}
 	}
@@ -138,8 +138,9 @@ public final class JPAZUtilities {
 
 		try {
 			Thread.sleep(time);
-		} catch (Exception e) {
-			// nothing to do (
+		} catch (InterruptedException e) {
+			// preserve interrupted status for the caller
+			Thread.currentThread().interrupt();
 		}
 	}
 
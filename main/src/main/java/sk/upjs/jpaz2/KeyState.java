@@ -0,0 +1,263 @@
+package sk.upjs.jpaz2;
+
+import java.awt.event.KeyEvent;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Table of states of keyboard keys of a pane. The table is designed for
+ * polling of key states in game loops (e.g., in the onTick method). All
+ * methods are lock-free and they do not allocate any objects, so they can be
+ * called from any thread without synchronization with JPAZ.
+ *
+ * Key states are stored in bit sets indexed by key codes. Supported key codes
+ * are between 0 and 65535 (all virtual key codes defined in the KeyEvent
+ * class). Extended key codes are ignored.
+ */
+public final class KeyState {
+
+	/**
+	 * Number of key codes covered by a single page of the table.
+	 */
+	private static final int PAGE_SIZE = 1024;
+
+	/**
+	 * Number of pages of the table.
+	 */
+	private static final int PAGE_COUNT = 64;
+
+	/**
+	 * Number of 64-bit words in bit sets of a page.
+	 */
+	private static final int WORDS_PER_PAGE = PAGE_SIZE / 64;
+
+	/**
+	 * Page of the table storing states of a range of key codes.
+	 */
+	private static class Page {
+		/**
+		 * Bit set of keys that are currently down.
+		 */
+		final AtomicLongArray down = new AtomicLongArray(WORDS_PER_PAGE);
+
+		/**
+		 * Bit set of keys pressed since the last completed tick.
+		 */
+		final AtomicLongArray pressed = new AtomicLongArray(WORDS_PER_PAGE);
+
+		/**
+		 * Bit set of keys pressed between the last two ticks.
+		 */
+		final AtomicLongArray pressedInTick = new AtomicLongArray(WORDS_PER_PAGE);
+
+		/**
+		 * Times (in milliseconds) when keys were pressed.
+		 */
+		final AtomicLongArray pressTimes = new AtomicLongArray(PAGE_SIZE);
+	}
+
+	/**
+	 * Pages of the table. Pages are created when an event with a key code of
+	 * the page is received for the first time.
+	 */
+	private final AtomicReferenceArray<Page> pages = new AtomicReferenceArray<Page>(PAGE_COUNT);
+
+	/**
+	 * Constructs a table with all keys released. Tables are created only by
+	 * panes.
+	 */
+	KeyState() {
+		pages.set(0, new Page());
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Polling
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns whether a key is currently down (pressed and not released).
+	 *
+	 * @param keyCode
+	 *            the key code (e.g., KeyEvent.VK_LEFT).
+	 * @return true, if the key is down, false otherwise.
+	 */
+	public boolean isKeyDown(int keyCode) {
+		Page page = getPage(keyCode, false);
+		if (page == null)
+			return false;
+
+		return isBitSet(page.down, keyCode % PAGE_SIZE);
+	}
+
+	/**
+	 * Returns whether a key was pressed between the last two ticks of the
+	 * pane. When called in the onTick method, it returns whether the key was
+	 * pressed since the previous execution of the onTick method. The result
+	 * is true also for keys that were pressed and released before the tick.
+	 * Repeated key pressed events of hold keys are not considered.
+	 *
+	 * @param keyCode
+	 *            the key code (e.g., KeyEvent.VK_SPACE).
+	 * @return true, if the key was pressed since the last tick, false
+	 *         otherwise.
+	 */
+	public boolean wasPressedSinceLastTick(int keyCode) {
+		Page page = getPage(keyCode, false);
+		if (page == null)
+			return false;
+
+		return isBitSet(page.pressedInTick, keyCode % PAGE_SIZE);
+	}
+
+	/**
+	 * Returns how long a key is down.
+	 *
+	 * @param keyCode
+	 *            the key code.
+	 * @return the time in milliseconds elapsed since the key was pressed or 0,
+	 *         if the key is not down.
+	 */
+	public long heldDuration(int keyCode) {
+		Page page = getPage(keyCode, false);
+		if (page == null)
+			return 0;
+
+		int idx = keyCode % PAGE_SIZE;
+		if (!isBitSet(page.down, idx))
+			return 0;
+
+		return Math.max(0, System.currentTimeMillis() - page.pressTimes.get(idx));
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Updates
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Updates the table according to a received key event.
+	 *
+	 * @param type
+	 *            the type of the event
+	 * @param evt
+	 *            the detailed information about the event
+	 */
+	void processKeyEvent(int type, KeyEvent evt) {
+		int keyCode = evt.getKeyCode();
+		if (type == KeyEvent.KEY_PRESSED) {
+			Page page = getPage(keyCode, true);
+			if (page == null)
+				return;
+
+			int idx = keyCode % PAGE_SIZE;
+			// the press time is stored before the key is marked down, so that
+			// readers never see a down key with an old press time
+			if (!isBitSet(page.down, idx)) {
+				page.pressTimes.set(idx, System.currentTimeMillis());
+				if (setBit(page.down, idx))
+					setBit(page.pressed, idx);
+			}
+		} else if (type == KeyEvent.KEY_RELEASED) {
+			Page page = getPage(keyCode, false);
+			if (page != null)
+				clearBit(page.down, keyCode % PAGE_SIZE);
+		}
+	}
+
+	/**
+	 * Marks all keys as released.
+	 */
+	void releaseAll() {
+		for (int i = 0; i < PAGE_COUNT; i++) {
+			Page page = pages.get(i);
+			if (page != null) {
+				for (int w = 0; w < WORDS_PER_PAGE; w++)
+					page.down.set(w, 0);
+			}
+		}
+	}
+
+	/**
+	 * Completes a tick: keys pressed since the previous call become keys
+	 * pressed since the last tick.
+	 */
+	void nextTick() {
+		for (int i = 0; i < PAGE_COUNT; i++) {
+			Page page = pages.get(i);
+			if (page != null) {
+				for (int w = 0; w < WORDS_PER_PAGE; w++) {
+					long pressedBits = (page.pressed.get(w) == 0) ? 0 : page.pressed.getAndSet(w, 0);
+					if ((pressedBits != 0) || (page.pressedInTick.get(w) != 0))
+						page.pressedInTick.set(w, pressedBits);
+				}
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Internal methods
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns the page storing state of a key code.
+	 *
+	 * @param keyCode
+	 *            the key code.
+	 * @param create
+	 *            true, if a missing page should be created.
+	 * @return the page or null, if the key code is not supported or the page
+	 *         does not exist.
+	 */
+	private Page getPage(int keyCode, boolean create) {
+		if ((keyCode < 0) || (keyCode >= PAGE_SIZE * PAGE_COUNT))
+			return null;
+
+		int pageIdx = keyCode / PAGE_SIZE;
+		Page page = pages.get(pageIdx);
+		if ((page == null) && create) {
+			pages.compareAndSet(pageIdx, null, new Page());
+			page = pages.get(pageIdx);
+		}
+
+		return page;
+	}
+
+	/**
+	 * Returns whether a bit is set in a bit set.
+	 */
+	private static boolean isBitSet(AtomicLongArray bits, int idx) {
+		return (bits.get(idx >>> 6) & (1L << idx)) != 0;
+	}
+
+	/**
+	 * Sets a bit in a bit set.
+	 *
+	 * @return true, if the bit was not set before, false otherwise.
+	 */
+	private static boolean setBit(AtomicLongArray bits, int idx) {
+		int w = idx >>> 6;
+		long mask = 1L << idx;
+		while (true) {
+			long value = bits.get(w);
+			if ((value & mask) != 0)
+				return false;
+
+			if (bits.compareAndSet(w, value, value | mask))
+				return true;
+		}
+	}
+
+	/**
+	 * Clears a bit in a bit set.
+	 */
+	private static void clearBit(AtomicLongArray bits, int idx) {
+		int w = idx >>> 6;
+		long mask = 1L << idx;
+		while (true) {
+			long value = bits.get(w);
+			if ((value & mask) == 0)
+				return;
+
+			if (bits.compareAndSet(w, value, value & ~mask))
+				return;
+		}
+	}
+}
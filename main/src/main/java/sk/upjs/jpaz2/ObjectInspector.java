@@ -30,6 +30,10 @@ public class ObjectInspector {
 		 * Stop class for object inspection.
 		 */
 		Class<?> stopClass;
+		/**
+		 * Period in milliseconds in which property values are refreshed.
+		 */
+		long refreshPeriod = DEFAULT_REFRESH_PERIOD;
 
 		/**
 		 * Constructs a new record about an inspected object.
@@ -67,6 +71,11 @@ public class ObjectInspector {
 		}
 	}
 
+	/**
+	 * Default period in milliseconds in which property values are refreshed.
+	 */
+	private static final long DEFAULT_REFRESH_PERIOD = 200;
+
 	// ---------------------------------------------------------------------------------------------------
 	// Internal GUI objects
 	// ---------------------------------------------------------------------------------------------------
@@ -229,6 +238,77 @@ public class ObjectInspector {
 	// Methods for simple configuration
 	// ---------------------------------------------------------------------------------------------------
 
+	/**
+	 * Sets the period in which property values of an inspected object are
+	 * refreshed. Values of an object are refreshed only when the object is
+	 * displayed and they are refreshed less frequently when they do not
+	 * change.
+	 * 
+	 * @param object
+	 *            the inspected object
+	 * @param refreshPeriod
+	 *            the refresh period in milliseconds
+	 */
+	public void setRefreshPeriod(final Object object, final long refreshPeriod) {
+		if (refreshPeriod <= 0) {
+			throw new IllegalArgumentException("The refresh period must be a positive number.");
+		}
+
+		JPAZUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				ObjectItem item = findObjectItem(object);
+				if (item == null) {
+					throw new RuntimeException("The object is not inspected.");
+				}
+
+				item.refreshPeriod = refreshPeriod;
+				if (item == objectComboBox.getSelectedItem()) {
+					oipanel.setUpdatePeriod(refreshPeriod);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Returns the period in which property values of an inspected object are
+	 * refreshed.
+	 * 
+	 * @param object
+	 *            the inspected object
+	 * @return the refresh period in milliseconds
+	 */
+	public long getRefreshPeriod(final Object object) {
+		return (Long) JPAZUtilities.invokeAndWait(new JPAZUtilities.Computable() {
+			public Object compute() {
+				ObjectItem item = findObjectItem(object);
+				if (item == null) {
+					throw new RuntimeException("The object is not inspected.");
+				}
+
+				return item.refreshPeriod;
+			}
+		});
+	}
+
+	/**
+	 * Returns the record about an inspected object. The method must be
+	 * invoked in the EDT.
+	 * 
+	 * @param object
+	 *            the inspected object
+	 * @return the record or null, if the object is not inspected
+	 */
+	private ObjectItem findObjectItem(Object object) {
+		for (int i = 0; i < objectComboBox.getItemCount(); i++) {
+			ObjectItem item = objectComboBox.getItemAt(i);
+			if (item.object == object) {
+				return item;
+			}
+		}
+
+		return null;
+	}
+
 	// ---------------------------------------------------------------------------------------------------
 	// GUI settings
 	// ---------------------------------------------------------------------------------------------------
@@ -275,9 +355,10 @@ public class ObjectInspector {
 		objectComboBox.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				ObjectItem item = (ObjectItem) objectComboBox.getSelectedItem();
-				if (item != null)
+				if (item != null) {
 					oipanel.setInspectedObject(item.object, item.stopClass);
-				else
+					oipanel.setUpdatePeriod(item.refreshPeriod);
+				} else
 					oipanel.setInspectedObject(null, null);
 			}
 		});
@@ -5,11 +5,18 @@ import java.awt.event.*;
 import java.awt.geom.*;
 import java.awt.image.*;
 import java.io.File;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
 /**
  * The Pane represents a rectangle pane with graphical content and ability to
@@ -79,6 +86,32 @@ public class Pane implements PaneObject {
 	 */
 	private AffineTransform coordinatesTransform = null;
 
+	/**
+	 * Reusable point storing coordinates of the last point transformed from
+	 * parent's pane coordinates to coordinates of this pane.
+	 */
+	private final Point transformedPoint = new Point();
+
+	/**
+	 * X-coordinate (in parent's pane coordinates) of the last transformed
+	 * point.
+	 */
+	private int transformedPointSourceX;
+
+	/**
+	 * Y-coordinate (in parent's pane coordinates) of the last transformed
+	 * point.
+	 */
+	private int transformedPointSourceY;
+
+	/**
+	 * Indicates whether the transformedPoint stores a valid transformation
+	 * result with respect to current location, center and rotation of the
+	 * pane. Hit-testing of mouse events and cursor updates at the same location
+	 * share the transformation result.
+	 */
+	private boolean transformedPointValid = false;
+
 	/**
 	 * Border width. The border is drawn over the content of the pane, i.e., it
 	 * can hide a part of the pane content.
@@ -123,6 +156,24 @@ public class Pane implements PaneObject {
 	 */
 	private BufferedImage backBuffer = null;
 
+	/**
+	 * Image that stores the content of the backBuffer transformed according to
+	 * rotation of the pane. It is used only for rotated panes.
+	 */
+	private BufferedImage rotatedImage = null;
+
+	/**
+	 * Bounding rectangle of the rotated pane with respect to parent's pane
+	 * coordinate system. It determines location of the rotatedImage.
+	 */
+	private final Rectangle rotatedBounds = new Rectangle();
+
+	/**
+	 * Indicates whether the rotatedImage corresponds to current content of the
+	 * backBuffer and current location, center and rotation of the pane.
+	 */
+	private boolean rotatedImageValid = false;
+
 	/**
 	 * Map of drawable overlays.
 	 */
@@ -138,6 +189,19 @@ public class Pane implements PaneObject {
 	 */
 	private boolean invalidated = true;
 
+	/**
+	 * Indicates that only the region dirtyRegion of the backBuffer is no
+	 * longer valid. It is set when only pixels of the pane content were
+	 * changed.
+	 */
+	private boolean partiallyInvalidated = false;
+
+	/**
+	 * Region of the backBuffer that is no longer valid, if the pane is
+	 * partially invalidated.
+	 */
+	private final Rectangle dirtyRegion = new Rectangle();
+
 	/**
 	 * Determines whether the pane is transparent for mouse events, i.e., any
 	 * mouse event is forwarded also to pane under this pane.
@@ -171,25 +235,12 @@ public class Pane implements PaneObject {
 	private Pane parentPane = null;
 
 	/**
-	 * List of all objects living on the pane. With increasing index of an
-	 * object decreases z-index of the object, i.e., last object is in front of
-	 * all other objects.
-	 */
-	private final java.util.List<PaneObject> children = new ArrayList<PaneObject>();
-
-	/**
-	 * List of all children turtles living on the pane. This list is only a
-	 * sublist of the children list. It is maintained due to performance
-	 * reasons.
+	 * Objects living on the pane in z-order. With increasing index of an object
+	 * increases z-index of the object, i.e., last object is in front of all
+	 * other objects. Turtles and panes are maintained as separate views due to
+	 * performance reasons.
 	 */
-	private final java.util.List<Turtle> turtles = new ArrayList<Turtle>();
-
-	/**
-	 * List of all children panes living on the pane. This list is only a
-	 * sublist of the children list. It is maintained due to performance
-	 * reasons.
-	 */
-	private final java.util.List<Pane> panes = new ArrayList<Pane>();
+	private final PaneChildren children = new PaneChildren();
 
 	/**
 	 * List of registered listeners that listen to changes in this pane.
@@ -207,6 +258,27 @@ public class Pane implements PaneObject {
 	 */
 	private final KeyEventManager keyEventManager;
 
+	/**
+	 * Table of states of keyboard keys for polling.
+	 */
+	private final KeyState keyState = new KeyState();
+
+	/**
+	 * Indicates whether input events received from a JPAZPanel are buffered
+	 * and dispatched at the start of the next tick.
+	 */
+	private volatile boolean inputBuffered = false;
+
+	/**
+	 * Indicates whether the pane ticks, i.e., the tick period is positive.
+	 */
+	private volatile boolean ticking = false;
+
+	/**
+	 * Queue of buffered input events waiting for dispatching.
+	 */
+	private final Queue<Runnable> bufferedInputEvents = new ConcurrentLinkedQueue<Runnable>();
+
 	/**
 	 * Indicates whether turtles should be centered when added to the pane.
 	 */
@@ -276,6 +348,8 @@ public class Pane implements PaneObject {
 		// prepare tick timer
 		tickTimer = new TickTimer(this.toString()) {
 			protected void onTick() {
+				dispatchBufferedInputEvents();
+				keyState.nextTick();
 				Pane.this.onTick();
 			};
 		};
@@ -660,17 +734,28 @@ public class Pane implements PaneObject {
 
 	/**
 	 * Transforms coordinates in the parent's pane to coordinates of this pane.
+	 * The result is stored in a reusable point, so it must be read before the
+	 * next transformation.
 	 * 
 	 * @return the transformed coordinates.
 	 */
 	private Point transformCoordinates(int x, int y) {
+		if (transformedPointValid && (transformedPointSourceX == x) && (transformedPointSourceY == y))
+			return transformedPoint;
+
 		if (coordinatesTransform != null) {
-			Point2D point = new Point2D.Double(x, y);
-			point = coordinatesTransform.transform(point, null);
-			return new Point((int) Math.round(point.getX()), (int) Math.round(point.getY()));
+			AffineTransform t = coordinatesTransform;
+			transformedPoint.x = (int) Math.round(x * t.getScaleX() + y * t.getShearX() + t.getTranslateX());
+			transformedPoint.y = (int) Math.round(x * t.getShearY() + y * t.getScaleY() + t.getTranslateY());
 		} else {
-			return new Point(x - roundedLocation.x + roundedCenter.x, y - roundedLocation.y + roundedCenter.y);
+			transformedPoint.x = x - roundedLocation.x + roundedCenter.x;
+			transformedPoint.y = y - roundedLocation.y + roundedCenter.y;
 		}
+
+		transformedPointSourceX = x;
+		transformedPointSourceY = y;
+		transformedPointValid = true;
+		return transformedPoint;
 	}
 
 	/**
@@ -678,8 +763,11 @@ public class Pane implements PaneObject {
 	 * to coordinates in this pane.
 	 */
 	private void recalculateCoordinatesTransform() {
+		transformedPointValid = false;
+		rotatedImageValid = false;
 		if (rotation == 0) {
 			coordinatesTransform = null;
+			rotatedImage = null;
 			return;
 		}
 
@@ -895,6 +983,13 @@ public class Pane implements PaneObject {
 	 * repaint is realized.
 	 */
 	private void repaintBackBuffer() {
+		// recreate the back buffer, if it was released
+		if (backBuffer == null) {
+			backBuffer = new BufferedImage(content.getWidth(), content.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+			invalidated = true;
+			partiallyInvalidated = false;
+		}
+
 		// if content of the back buffer is still valid, we don't need to
 		// repaint it
 		if (!invalidated) {
@@ -904,6 +999,11 @@ public class Pane implements PaneObject {
 		// create graphics for accessing back buffer
 		Graphics2D dbg = backBuffer.createGraphics();
 
+		// repaint only the dirty region, if other parts are still valid
+		if (partiallyInvalidated) {
+			dbg.clip(dirtyRegion);
+		}
+
 		// prepare the background
 		if (transparentBackground || (backgroundColor == null)) {
 			dbg.setBackground(TRANSPARENT_COLOR);
@@ -911,7 +1011,11 @@ public class Pane implements PaneObject {
 			dbg.setBackground(backgroundColor);
 		}
 
-		dbg.clearRect(0, 0, backBuffer.getWidth(), backBuffer.getHeight());
+		if (partiallyInvalidated) {
+			dbg.clearRect(dirtyRegion.x, dirtyRegion.y, dirtyRegion.width, dirtyRegion.height);
+		} else {
+			dbg.clearRect(0, 0, backBuffer.getWidth(), backBuffer.getHeight());
+		}
 
 		// paint content of pane
 		dbg.drawImage(content, null, 0, 0);
@@ -927,7 +1031,7 @@ public class Pane implements PaneObject {
 		}
 
 		// draw objects on the pane
-		for (PaneObject o : children) {
+		for (PaneObject o : children.objectsInOrder()) {
 			Graphics2D g2d = (Graphics2D) dbg.create();
 			o.paintToPaneGraphics(g2d);
 			g2d.dispose();
@@ -944,6 +1048,47 @@ public class Pane implements PaneObject {
 
 		dbg.dispose();
 		invalidated = false;
+		partiallyInvalidated = false;
+		rotatedImageValid = false;
+	}
+
+	/**
+	 * Updates the image of the rotated pane if necessary. The image is
+	 * updated only if the pane was repainted, moved or rotated.
+	 */
+	private void updateRotatedImage() {
+		if (rotatedImageValid) {
+			return;
+		}
+
+		AffineTransform transform = new AffineTransform();
+		transform.translate(x, y);
+		transform.rotate(Math.toRadians(rotation));
+		transform.translate(-xCenter, -yCenter);
+
+		// compute bounding rectangle of the rotated pane
+		Rectangle2D bounds = transform.createTransformedShape(new Rectangle(0, 0, width, height)).getBounds2D();
+		int minX = (int) Math.floor(bounds.getMinX());
+		int minY = (int) Math.floor(bounds.getMinY());
+		int imageWidth = Math.max((int) Math.ceil(bounds.getMaxX()) - minX, 1);
+		int imageHeight = Math.max((int) Math.ceil(bounds.getMaxY()) - minY, 1);
+		rotatedBounds.setBounds(minX, minY, imageWidth, imageHeight);
+
+		// reuse the image, if it has the required size
+		if ((rotatedImage == null) || (rotatedImage.getWidth() != imageWidth)
+				|| (rotatedImage.getHeight() != imageHeight)) {
+			rotatedImage = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+
+		Graphics2D g = rotatedImage.createGraphics();
+		g.setBackground(TRANSPARENT_COLOR);
+		g.clearRect(0, 0, imageWidth, imageHeight);
+		g.translate(-minX, -minY);
+		g.transform(transform);
+		g.drawImage(backBuffer, null, 0, 0);
+		g.dispose();
+
+		rotatedImageValid = true;
 	}
 
 	/**
@@ -959,10 +1104,8 @@ public class Pane implements PaneObject {
 
 			g.setComposite(drawingComposite);
 			if (coordinatesTransform != null) {
-				g.translate(x, y);
-				g.rotate(Math.toRadians(rotation));
-				g.translate(-xCenter, -yCenter);
-				g.drawImage(backBuffer, null, 0, 0);
+				updateRotatedImage();
+				g.drawImage(rotatedImage, null, rotatedBounds.x, rotatedBounds.y);
 			} else {
 				g.drawImage(backBuffer, null, roundedLocation.x - roundedCenter.x, roundedLocation.y - roundedCenter.y);
 			}
@@ -982,10 +1125,69 @@ public class Pane implements PaneObject {
 		}
 	}
 
+	/**
+	 * Renders the content of this pane and all its child panes to back buffers
+	 * in advance, so that the first paint of the pane is fast. The method can
+	 * be invoked from any thread.
+	 */
+	public void prerender() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			repaintBackBuffer();
+		}
+	}
+
+	/**
+	 * Releases memory occupied by images used for rendering of this pane and
+	 * all its child panes. The content of panes is preserved and the images
+	 * are recreated when the pane is painted again. The method is useful for
+	 * panes that will not be displayed for a longer time.
+	 */
+	public void releaseBuffers() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			backBuffer = null;
+			rotatedImage = null;
+			rotatedImageValid = false;
+
+			for (Pane pane : children.panesSnapshot()) {
+				pane.releaseBuffers();
+			}
+		}
+	}
+
 	/**
 	 * Marks that the content of the pane is no longer valid.
 	 */
 	public void invalidate() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			partiallyInvalidated = false;
+			propagateInvalidation();
+		}
+	}
+
+	/**
+	 * Marks that a region of the pane content is no longer valid. If there is
+	 * no other invalidation before the next repaint, only this region of the
+	 * backbuffer is repainted.
+	 * 
+	 * @param region
+	 *            the changed region of the pane.
+	 */
+	private void invalidateRegion(Rectangle region) {
+		if (!invalidated) {
+			dirtyRegion.setBounds(region);
+			partiallyInvalidated = true;
+		} else if (partiallyInvalidated) {
+			dirtyRegion.add(region);
+		}
+
+		propagateInvalidation();
+	}
+
+	/**
+	 * Marks the pane as invalidated and notifies the parent pane and change
+	 * listeners.
+	 */
+	private void propagateInvalidation() {
 		synchronized (JPAZUtilities.getJPAZLock()) {
 			invalidated = true;
 
@@ -1126,26 +1328,13 @@ public class Pane implements PaneObject {
 			return;
 
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			if (!children.contains(o)) {
-				children.add(o);
-
-				// update special sublists
-				if (o instanceof Turtle) {
-					turtles.add((Turtle) o);
-				}
-
-				if (o instanceof Pane) {
-					panes.add((Pane) o);
-				}
-
+			if (children.add(o)) {
 				// try to add this pane as a parent of the PaneObject referenced
 				// by o
 				try {
 					o.setPane(this);
 				} catch (RuntimeException e) {
 					children.remove(o);
-					turtles.remove(o);
-					panes.remove(o);
 					throw e;
 				}
 
@@ -1192,16 +1381,6 @@ public class Pane implements PaneObject {
 	public void remove(PaneObject o) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
 			if (children.remove(o)) {
-
-				// update special sublists
-				if (o instanceof Turtle) {
-					turtles.remove((Turtle) o);
-				}
-
-				if (o instanceof Pane) {
-					panes.remove((Pane) o);
-				}
-
 				o.setPane(null);
 				invalidate();
 			}
@@ -1224,20 +1403,7 @@ public class Pane implements PaneObject {
 				throw new RuntimeException("Object is not living in this pane.");
 			}
 
-			children.remove(o);
-			children.add(o);
-
-			// update special sublists
-			if (o instanceof Turtle) {
-				turtles.remove((Turtle) o);
-				turtles.add((Turtle) o);
-			}
-
-			if (o instanceof Pane) {
-				panes.remove((Pane) o);
-				panes.add((Pane) o);
-			}
-
+			children.moveToFront(o);
 			invalidate();
 		}
 	}
@@ -1257,20 +1423,7 @@ public class Pane implements PaneObject {
 			if (!children.contains(o))
 				throw new RuntimeException("Object is not living in this pane.");
 
-			children.remove(o);
-			children.add(0, o);
-
-			// update special sublists
-			if (o instanceof Turtle) {
-				turtles.remove((Turtle) o);
-				turtles.add(0, (Turtle) o);
-			}
-
-			if (o instanceof Pane) {
-				panes.remove((Pane) o);
-				panes.add(0, (Pane) o);
-			}
-
+			children.moveToBack(o);
 			invalidate();
 		}
 	}
@@ -1298,28 +1451,7 @@ public class Pane implements PaneObject {
 				throw new RuntimeException("Location object is not living in this pane.");
 			}
 
-			children.remove(o);
-			children.add(children.indexOf(location) + 1, o);
-
-			// update special sublists
-			if (o instanceof Turtle) {
-				turtles.clear();
-				for (PaneObject po : children) {
-					if (po instanceof Turtle) {
-						turtles.add((Turtle) po);
-					}
-				}
-			}
-
-			if (o instanceof Pane) {
-				panes.clear();
-				for (PaneObject po : children) {
-					if (po instanceof Pane) {
-						panes.add((Pane) po);
-					}
-				}
-			}
-
+			children.moveInFrontOf(o, location);
 			invalidate();
 		}
 	}
@@ -1347,28 +1479,7 @@ public class Pane implements PaneObject {
 				throw new RuntimeException("Location object is not living in this pane.");
 			}
 
-			children.remove(o);
-			children.add(children.indexOf(location), o);
-
-			// update special sublists
-			if (o instanceof Turtle) {
-				turtles.clear();
-				for (PaneObject po : children) {
-					if (po instanceof Turtle) {
-						turtles.add((Turtle) po);
-					}
-				}
-			}
-
-			if (o instanceof Pane) {
-				panes.clear();
-				for (PaneObject po : children) {
-					if (po instanceof Pane) {
-						panes.add((Pane) po);
-					}
-				}
-			}
-
+			children.moveToBackOf(o, location);
 			invalidate();
 		}
 	}
@@ -1380,7 +1491,7 @@ public class Pane implements PaneObject {
 	 */
 	public Turtle[] getTurtles() {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return turtles.toArray(new Turtle[turtles.size()]);
+			return children.turtlesSnapshot().clone();
 		}
 	}
 
@@ -1391,12 +1502,15 @@ public class Pane implements PaneObject {
 	 */
 	public int getTurtleCount() {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return turtles.size();
+			return children.turtleCount();
 		}
 	}
 
 	/**
-	 * Gets the turtle associated with the specified index.
+	 * Gets the turtle associated with the specified index. The first access
+	 * after a turtle is added, removed or moved creates a new array with
+	 * turtles (linear time), subsequent accesses take constant time. If turtles
+	 * are reordered while iterating, use {@link #getTurtles()} instead.
 	 * 
 	 * @param index
 	 *            the position of the turtle.
@@ -1404,7 +1518,7 @@ public class Pane implements PaneObject {
 	 */
 	public Turtle getTurtle(int index) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return turtles.get(index);
+			return children.turtlesSnapshot()[index];
 		}
 	}
 
@@ -1415,10 +1529,19 @@ public class Pane implements PaneObject {
 	 */
 	public Pane[] getPanes() {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return panes.toArray(new Pane[0]);
+			return children.panesSnapshot().clone();
 		}
 	}
 
+	/**
+	 * Returns an array with children panes that corresponds to the current
+	 * state of the list of children panes. The array is shared and it must not
+	 * be modified.
+	 */
+	private Pane[] getPanesSnapshot() {
+		return children.panesSnapshot();
+	}
+
 	/**
 	 * Gets the number of children panes currently living in this pane.
 	 * 
@@ -1426,12 +1549,15 @@ public class Pane implements PaneObject {
 	 */
 	public int getPaneCount() {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return panes.size();
+			return children.paneCount();
 		}
 	}
 
 	/**
-	 * Gets the pane associated with the specified index.
+	 * Gets the pane associated with the specified index. The first access after
+	 * a pane is added, removed or moved creates a new array with panes (linear
+	 * time), subsequent accesses take constant time. If panes are reordered
+	 * while iterating, use {@link #getPanes()} instead.
 	 * 
 	 * @param index
 	 *            the position of the pane.
@@ -1439,7 +1565,7 @@ public class Pane implements PaneObject {
 	 */
 	public Pane getPane(int index) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return panes.get(index);
+			return children.panesSnapshot()[index];
 		}
 	}
 
@@ -1450,7 +1576,7 @@ public class Pane implements PaneObject {
 	 */
 	public PaneObject[] getPaneObjects() {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return children.toArray(new PaneObject[0]);
+			return children.objectsSnapshot().clone();
 		}
 	}
 
@@ -1466,7 +1592,11 @@ public class Pane implements PaneObject {
 	}
 
 	/**
-	 * Gets the pane object associated with the specified index.
+	 * Gets the pane object associated with the specified index. The first
+	 * access after a pane object is added, removed or moved creates a new array
+	 * with pane objects (linear time), subsequent accesses take constant time.
+	 * If pane objects are reordered while iterating, use
+	 * {@link #getPaneObjects()} instead.
 	 * 
 	 * @param index
 	 *            the position of the pane object.
@@ -1474,7 +1604,7 @@ public class Pane implements PaneObject {
 	 */
 	public PaneObject getPaneObject(int index) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			return children.get(index);
+			return children.objectsSnapshot()[index];
 		}
 	}
 
@@ -1485,6 +1615,8 @@ public class Pane implements PaneObject {
 	void detach() {
 		clearMouseEvents();
 		keyEventManager.releasePressedKeys();
+		bufferedInputEvents.clear();
+		keyState.releaseAll();
 	}
 
 	// ---------------------------------------------------------------------------------------------------
@@ -1582,12 +1714,12 @@ public class Pane implements PaneObject {
 
 			// broadcast the event through all mouse transparent children at a
 			// given position
-			int index = panes.size() - 1;
+			// use a snapshot of panes in case of reorder caused by event handler
+			Pane[] childPanes = getPanesSnapshot();
+			int index = childPanes.length - 1;
 			boolean fireAllowed = true;
-			// use a copy of panes in case of reorder caused by event handler
-			ArrayList<Pane> copyOfPanes = new ArrayList<Pane>(panes);
 			while (index >= 0) {
-				Pane childPane = copyOfPanes.get(index);
+				Pane childPane = childPanes[index];
 				boolean eventWanted = childPane.mouseEventWanted(type, buttonIdx);
 
 				if (fireAllowed && (!eventWanted)) {
@@ -1742,6 +1874,17 @@ public class Pane implements PaneObject {
 		}
 	}
 
+	/**
+	 * Returns the table of states of keyboard keys. The table provides
+	 * lock-free polling of key states that is suitable for game loops
+	 * realized in the onTick method.
+	 * 
+	 * @return the table of key states of this pane.
+	 */
+	public KeyState getKeyState() {
+		return keyState;
+	}
+
 	/**
 	 * Receives a key event.
 	 * 
@@ -1751,6 +1894,7 @@ public class Pane implements PaneObject {
 	 *            the detailed information about the event
 	 */
 	void fireKeyEvent(int type, KeyEvent detail) {
+		keyState.processKeyEvent(type, detail);
 		synchronized (JPAZUtilities.getJPAZLock()) {
 			keyEventManager.processKeyEvent(type, detail);
 		}
@@ -1791,7 +1935,7 @@ public class Pane implements PaneObject {
 			}
 
 			// broadcast the event to all child panes
-			for (Pane childPane : panes) {
+			for (Pane childPane : getPanesSnapshot()) {
 				childPane.fireKeyEvent(type, detail);
 			}
 		}
@@ -1959,14 +2103,14 @@ public class Pane implements PaneObject {
 	 */
 	protected boolean onCanClick(int x, int y) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
-			if (panes.isEmpty()) {
+			if (children.paneCount() == 0) {
 				return false;
 			}
 
-			ArrayList<Pane> copyOfPanes = new ArrayList<Pane>(panes);
-			int index = copyOfPanes.size() - 1;
+			Pane[] childPanes = getPanesSnapshot();
+			int index = childPanes.length - 1;
 			while (index >= 0) {
-				Pane childPane = copyOfPanes.get(index);
+				Pane childPane = childPanes[index];
 				if (childPane.containsPoint(x, y) && childPane.canClick(x, y, true)) {
 					return true;
 				}
@@ -2150,6 +2294,323 @@ public class Pane implements PaneObject {
 		}
 	}
 
+	// ---------------------------------------------------------------------------------------------------
+	// Pixel access
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * The handler of direct access to pixels of the pane content.
+	 */
+	public interface RasterHandler {
+
+		/**
+		 * Called with a view on pixels of the pane content. The view is valid
+		 * only during execution of this method.
+		 * 
+		 * @param pixels
+		 *            the pixels of the pane content in rows from top to bottom.
+		 *            Each pixel is a premultiplied ARGB color. The pixel [x, y]
+		 *            is stored at index y * width + x.
+		 * @param width
+		 *            the width of the pane content.
+		 * @param height
+		 *            the height of the pane content.
+		 */
+		void handleRaster(IntBuffer pixels, int width, int height);
+	}
+
+	/**
+	 * Reads colors of pixels in a rectangular region of the pane content.
+	 * Pixels are read directly from the data buffer of the pane content.
+	 * 
+	 * @param dst
+	 *            the array where colors of pixels are stored in rows from top
+	 *            to bottom. Each color is stored as an ARGB value (not
+	 *            premultiplied) in the same way as by the method
+	 *            BufferedImage.getRGB. The color of the pixel [region.x + i,
+	 *            region.y + j] is stored at index j * region.width + i.
+	 * @param region
+	 *            the region of the pane or null for the whole pane.
+	 */
+	public void getPixels(int[] dst, Rectangle region) {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			region = checkPixelRegion(dst, region);
+			int[] data = getContentData();
+			int dstIdx = 0;
+			for (int y = region.y; y < region.y + region.height; y++) {
+				int idx = y * width + region.x;
+				for (int i = 0; i < region.width; i++) {
+					int pixel = data[idx++];
+					int alpha = pixel >>> 24;
+					if ((alpha != 0xFF) && (alpha != 0)) {
+						// conversion from premultiplied color
+						int r = (((pixel >> 16) & 0xFF) * 255 + alpha / 2) / alpha;
+						int g = (((pixel >> 8) & 0xFF) * 255 + alpha / 2) / alpha;
+						int b = ((pixel & 0xFF) * 255 + alpha / 2) / alpha;
+						pixel = (alpha << 24) | (Math.min(r, 255) << 16) | (Math.min(g, 255) << 8) | Math.min(b, 255);
+					}
+
+					dst[dstIdx++] = pixel;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets colors of pixels in a rectangular region of the pane content.
+	 * Pixels are written directly to the data buffer of the pane content and
+	 * only the region is invalidated.
+	 * 
+	 * @param src
+	 *            the array with colors of pixels in rows from top to bottom.
+	 *            Each color is an ARGB value (not premultiplied) in the same
+	 *            way as in the method BufferedImage.setRGB. The color of the
+	 *            pixel [region.x + i, region.y + j] is stored at index j *
+	 *            region.width + i.
+	 * @param region
+	 *            the region of the pane or null for the whole pane.
+	 */
+	public void setPixels(int[] src, Rectangle region) {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			region = checkPixelRegion(src, region);
+			int[] data = getContentData();
+			int srcIdx = 0;
+			for (int y = region.y; y < region.y + region.height; y++) {
+				int idx = y * width + region.x;
+				for (int i = 0; i < region.width; i++) {
+					int pixel = src[srcIdx++];
+					int alpha = pixel >>> 24;
+					if (alpha == 0) {
+						pixel = 0;
+					} else if (alpha != 0xFF) {
+						// conversion to premultiplied color
+						int r = (((pixel >> 16) & 0xFF) * alpha + 127) / 255;
+						int g = (((pixel >> 8) & 0xFF) * alpha + 127) / 255;
+						int b = ((pixel & 0xFF) * alpha + 127) / 255;
+						pixel = (alpha << 24) | (r << 16) | (g << 8) | b;
+					}
+
+					data[idx++] = pixel;
+				}
+			}
+
+			invalidateRegion(region);
+		}
+	}
+
+	/**
+	 * Provides direct access to pixels of the pane content. After the handler
+	 * completes, the whole pane is invalidated.
+	 * 
+	 * @param handler
+	 *            the handler that reads or modifies pixels.
+	 */
+	public void withRaster(RasterHandler handler) {
+		withRaster(null, handler);
+	}
+
+	/**
+	 * Provides direct access to pixels of the pane content. The handler
+	 * declares that it modifies only pixels in a given region. After the
+	 * handler completes, only this region is invalidated.
+	 * 
+	 * @param region
+	 *            the region of the pane that can be modified by the handler or
+	 *            null for the whole pane.
+	 * @param handler
+	 *            the handler that reads or modifies pixels.
+	 */
+	public void withRaster(Rectangle region, RasterHandler handler) {
+		if (handler == null) {
+			return;
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			region = checkPixelRegion(null, region);
+			try {
+				handler.handleRaster(IntBuffer.wrap(getContentData()), width, height);
+			} finally {
+				if (!region.isEmpty()) {
+					invalidateRegion(region);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Fills the area of similar colors around a given point of the pane
+	 * content (bucket fill). The area consists of pixels, which can be reached
+	 * from the start point through horizontally or vertically adjacent pixels
+	 * and whose color is similar to the color of the start point.
+	 * 
+	 * @param x
+	 *            the x-coordinate of the start point.
+	 * @param y
+	 *            the y-coordinate of the start point.
+	 * @param color
+	 *            the fill color.
+	 * @param tolerance
+	 *            the maximal allowed difference of each color component
+	 *            (including alpha) of a pixel from the color of the start
+	 *            point. A value between 0 (only the same color) and 255.
+	 */
+	public void floodFill(int x, int y, Color color, int tolerance) {
+		if (color == null) {
+			throw new NullPointerException("Fill color cannot be null.");
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			if ((x < 0) || (y < 0) || (x >= width) || (y >= height)) {
+				return;
+			}
+
+			int[] data = getContentData();
+			int target = data[y * width + x];
+
+			// premultiplied fill color
+			int alpha = color.getAlpha();
+			int fill = (alpha << 24) | (((color.getRed() * alpha + 127) / 255) << 16)
+					| (((color.getGreen() * alpha + 127) / 255) << 8) | ((color.getBlue() * alpha + 127) / 255);
+
+			// pixels that were already filled
+			long[] filled = new long[(width * height + 63) / 64];
+
+			// stack of seed points stored as pairs [x, y]
+			int[] stack = new int[64];
+			int stackSize = 0;
+			stack[stackSize++] = x;
+			stack[stackSize++] = y;
+
+			int minX = x;
+			int maxX = x;
+			int minY = y;
+			int maxY = y;
+			while (stackSize > 0) {
+				int seedY = stack[--stackSize];
+				int seedX = stack[--stackSize];
+				int rowStart = seedY * width;
+				if (!isFloodFillable(data, filled, rowStart + seedX, target, tolerance)) {
+					continue;
+				}
+
+				// find the span of fillable pixels in the row
+				int left = seedX;
+				while ((left > 0) && isFloodFillable(data, filled, rowStart + left - 1, target, tolerance)) {
+					left--;
+				}
+
+				int right = seedX;
+				while ((right < width - 1) && isFloodFillable(data, filled, rowStart + right + 1, target, tolerance)) {
+					right++;
+				}
+
+				// fill the span
+				for (int i = rowStart + left; i <= rowStart + right; i++) {
+					data[i] = fill;
+					filled[i >>> 6] |= 1L << i;
+				}
+
+				minX = Math.min(minX, left);
+				maxX = Math.max(maxX, right);
+				minY = Math.min(minY, seedY);
+				maxY = Math.max(maxY, seedY);
+
+				// push starts of fillable runs in the rows above and below
+				for (int ny = seedY - 1; ny <= seedY + 1; ny += 2) {
+					if ((ny < 0) || (ny >= height)) {
+						continue;
+					}
+
+					int nRowStart = ny * width;
+					boolean inRun = false;
+					for (int nx = left; nx <= right; nx++) {
+						boolean fillable = isFloodFillable(data, filled, nRowStart + nx, target, tolerance);
+						if (fillable && !inRun) {
+							if (stackSize + 2 > stack.length) {
+								stack = Arrays.copyOf(stack, stack.length * 2);
+							}
+
+							stack[stackSize++] = nx;
+							stack[stackSize++] = ny;
+						}
+						inRun = fillable;
+					}
+				}
+			}
+
+			invalidateRegion(new Rectangle(minX, minY, maxX - minX + 1, maxY - minY + 1));
+		}
+	}
+
+	/**
+	 * Returns whether a pixel can be filled by the flood fill.
+	 * 
+	 * @param data
+	 *            the pixels of the pane content.
+	 * @param filled
+	 *            the bit set of already filled pixels.
+	 * @param idx
+	 *            the index of the pixel.
+	 * @param target
+	 *            the color of the start point.
+	 * @param tolerance
+	 *            the maximal allowed difference of color components.
+	 */
+	private static boolean isFloodFillable(int[] data, long[] filled, int idx, int target, int tolerance) {
+		if ((filled[idx >>> 6] & (1L << idx)) != 0) {
+			return false;
+		}
+
+		int pixel = data[idx];
+		if (pixel == target) {
+			return true;
+		}
+
+		for (int shift = 0; shift < 32; shift += 8) {
+			int difference = ((pixel >>> shift) & 0xFF) - ((target >>> shift) & 0xFF);
+			if ((difference > tolerance) || (difference < -tolerance)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns pixels of the pane content stored in its data buffer.
+	 */
+	private int[] getContentData() {
+		return ((DataBufferInt) content.getRaster().getDataBuffer()).getData();
+	}
+
+	/**
+	 * Checks whether a region is inside the pane and whether an array of
+	 * pixels is large enough to store pixels of the region.
+	 * 
+	 * @param pixels
+	 *            the array of pixels or null, if the array should not be
+	 *            checked.
+	 * @param region
+	 *            the region or null for the whole pane.
+	 * @return the checked region.
+	 */
+	private Rectangle checkPixelRegion(int[] pixels, Rectangle region) {
+		if (region == null) {
+			region = new Rectangle(0, 0, width, height);
+		}
+
+		if ((region.x < 0) || (region.y < 0) || (region.width < 0) || (region.height < 0)
+				|| (region.x + region.width > width) || (region.y + region.height > height)) {
+			throw new RuntimeException("Region is not inside the pane.");
+		}
+
+		if ((pixels != null) && (pixels.length < region.width * region.height)) {
+			throw new RuntimeException("Array of pixels is too small for the region.");
+		}
+
+		return region;
+	}
+
 	// ---------------------------------------------------------------------------------------------------
 	// Ticking support
 	// ---------------------------------------------------------------------------------------------------
@@ -2178,6 +2639,95 @@ public class Pane implements PaneObject {
 	public void setTickPeriod(long tickPeriod) {
 		synchronized (JPAZUtilities.getJPAZLock()) {
 			tickTimer.setTickPeriod(tickPeriod);
+			ticking = (tickPeriod > 0);
+			if (!ticking)
+				scheduleBufferedInputDispatch();
+		}
+	}
+
+	/**
+	 * Returns whether the buffered input mode is enabled. In this mode, input
+	 * events received from a JPAZPanel, to which the pane is bound, are not
+	 * dispatched immediately. Instead they are stored in a queue and
+	 * dispatched in order at the start of the next tick (before the onTick
+	 * method is called). Hence, the Swing's EDT does not wait for simulation
+	 * code executed in other threads.
+	 * 
+	 * @return true, if the buffered input mode is enabled, false otherwise.
+	 */
+	public boolean isInputBuffered() {
+		return inputBuffered;
+	}
+
+	/**
+	 * Sets whether the buffered input mode is enabled. In this mode, input
+	 * events received from a JPAZPanel, to which the pane is bound, are not
+	 * dispatched immediately. Instead they are stored in a queue and
+	 * dispatched in order at the start of the next tick (before the onTick
+	 * method is called). If the tick period of the pane is 0, events are
+	 * dispatched immediately.
+	 * 
+	 * @param inputBuffered
+	 *            true, for enabling the buffered input mode, false otherwise.
+	 */
+	public void setInputBuffered(boolean inputBuffered) {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			this.inputBuffered = inputBuffered;
+			if (!inputBuffered)
+				scheduleBufferedInputDispatch();
+		}
+	}
+
+	/**
+	 * Stores an input event to the queue of buffered input events.
+	 * 
+	 * @param dispatcher
+	 *            the runnable that dispatches the event.
+	 * @return true, if the event was buffered, false, if the event should be
+	 *         dispatched immediately.
+	 */
+	boolean bufferInputEvent(Runnable dispatcher) {
+		if ((!inputBuffered) || (!ticking))
+			return false;
+
+		bufferedInputEvents.offer(dispatcher);
+
+		// buffering could be disabled before the event was stored, then
+		// nothing dispatches the event at the start of a tick
+		if ((!inputBuffered) || (!ticking))
+			scheduleBufferedInputDispatch();
+
+		return true;
+	}
+
+	/**
+	 * Schedules dispatching of buffered input events in the Swing's EDT. It is
+	 * used when events cannot be dispatched at the start of a tick.
+	 */
+	private void scheduleBufferedInputDispatch() {
+		if (bufferedInputEvents.isEmpty())
+			return;
+
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				synchronized (JPAZUtilities.getJPAZLock()) {
+					dispatchBufferedInputEvents();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Dispatches all buffered input events.
+	 */
+	private void dispatchBufferedInputEvents() {
+		Runnable dispatcher;
+		while ((dispatcher = bufferedInputEvents.poll()) != null) {
+			try {
+				dispatcher.run();
+			} catch (Exception e) {
+				System.err.println("Dispatching of a buffered input event in " + this.toString() + " failed: " + e);
+			}
 		}
 	}
 
@@ -2223,6 +2773,84 @@ public class Pane implements PaneObject {
 		}
 	}
 
+	/**
+	 * Adds a listener that is notified whenever the pane is invalidated,
+	 * moved, resized or rotated. Listeners are notified in the thread that
+	 * changed the pane while holding the JPAZ lock, so they should only record
+	 * the notification.
+	 * 
+	 * @param listener
+	 *            the listener to be added.
+	 */
+	public void addChangeListener(ChangeListener listener) {
+		if (listener != null) {
+			addPaneChangeListener(new StateChangeForwarder(this, listener));
+		}
+	}
+
+	/**
+	 * Removes a listener that is notified about changes of the pane.
+	 * 
+	 * @param listener
+	 *            the listener to be removed.
+	 */
+	public void removeChangeListener(ChangeListener listener) {
+		if (listener != null) {
+			removePaneChangeListener(new StateChangeForwarder(this, listener));
+		}
+	}
+
+	/**
+	 * Pane change listener that forwards all pane change events to a change
+	 * listener. Forwarders are equal, if they forward to the same listener.
+	 */
+	private static final class StateChangeForwarder implements PaneChangeListener {
+
+		/**
+		 * The listener receiving forwarded events.
+		 */
+		private final ChangeListener listener;
+
+		/**
+		 * Event passed to the listener.
+		 */
+		private final ChangeEvent event;
+
+		/**
+		 * Constructs the forwarder.
+		 */
+		StateChangeForwarder(Pane pane, ChangeListener listener) {
+			this.listener = listener;
+			this.event = new ChangeEvent(pane);
+		}
+
+		public void paneResized(PaneChangeEvent e) {
+			listener.stateChanged(event);
+		}
+
+		public void paneMoved(PaneChangeEvent e) {
+			listener.stateChanged(event);
+		}
+
+		public void paneInvalidated(PaneChangeEvent e) {
+			listener.stateChanged(event);
+		}
+
+		public void paneRotationChanged(PaneChangeEvent e) {
+			listener.stateChanged(event);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return (obj instanceof StateChangeForwarder) && (((StateChangeForwarder) obj).listener == listener);
+		}
+
+		@Override
+		public int hashCode() {
+			return System.identityHashCode(listener);
+		}
+	}
+
 	// ---------------------------------------------------------------------------------------------------
 	// Other
 	// ---------------------------------------------------------------------------------------------------
@@ -0,0 +1,393 @@
+package sk.upjs.jpaz2;
+
+import java.util.*;
+
+/**
+ * Z-ordered collection of objects living on a pane. Objects are kept in an
+ * intrusive doubly linked list (from back to front) and each object is mapped
+ * to its node of the list, so that adding, removing and reordering of objects
+ * take constant time. Arrays with objects (snapshots) of all objects, turtles
+ * and panes are created lazily and they are shared until the collection is
+ * changed. A change invalidates only the snapshots of views containing the
+ * changed object, e.g., moving a turtle does not invalidate the snapshot of
+ * panes. Creating an invalidated snapshot takes linear time.
+ */
+final class PaneChildren {
+
+	/**
+	 * Node of the list of objects.
+	 */
+	private static final class Node {
+
+		/**
+		 * The object stored in the node.
+		 */
+		final PaneObject object;
+
+		/**
+		 * The node with the object directly to back of this object, or null.
+		 */
+		Node previous;
+
+		/**
+		 * The node with the object directly in front of this object, or null.
+		 */
+		Node next;
+
+		/**
+		 * Constructs a node with an object.
+		 */
+		Node(PaneObject object) {
+			this.object = object;
+		}
+	}
+
+	/**
+	 * Nodes of objects.
+	 */
+	private final Map<PaneObject, Node> nodes = new IdentityHashMap<PaneObject, Node>();
+
+	/**
+	 * The node with the object to back of all other objects, or null, if the
+	 * collection is empty.
+	 */
+	private Node first;
+
+	/**
+	 * The node with the object in front of all other objects, or null, if the
+	 * collection is empty.
+	 */
+	private Node last;
+
+	/**
+	 * Number of turtles.
+	 */
+	private int turtleCount;
+
+	/**
+	 * Number of panes.
+	 */
+	private int paneCount;
+
+	/**
+	 * Array with all objects in z-order or null, if the collection has been
+	 * changed since the snapshot was created. The array is never modified.
+	 */
+	private PaneObject[] objectsSnapshot = new PaneObject[0];
+
+	/**
+	 * Array with turtles in z-order or null, if the collection has been
+	 * changed since the snapshot was created. The array is never modified.
+	 */
+	private Turtle[] turtlesSnapshot = new Turtle[0];
+
+	/**
+	 * Array with panes in z-order or null, if the collection has been changed
+	 * since the snapshot was created. The array is never modified.
+	 */
+	private Pane[] panesSnapshot = new Pane[0];
+
+	/**
+	 * Live view of objects in z-order.
+	 */
+	private final Collection<PaneObject> objectsInOrder = new AbstractCollection<PaneObject>() {
+		@Override
+		public Iterator<PaneObject> iterator() {
+			return new Iterator<PaneObject>() {
+				private Node node = first;
+
+				public boolean hasNext() {
+					return node != null;
+				}
+
+				public PaneObject next() {
+					if (node == null) {
+						throw new NoSuchElementException();
+					}
+
+					PaneObject result = node.object;
+					node = node.next;
+					return result;
+				}
+
+				public void remove() {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+
+		@Override
+		public int size() {
+			return nodes.size();
+		}
+	};
+
+	// ---------------------------------------------------------------------------------------------------
+	// Content
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns whether an object is in the collection.
+	 */
+	boolean contains(PaneObject o) {
+		return nodes.containsKey(o);
+	}
+
+	/**
+	 * Returns the number of objects.
+	 */
+	int size() {
+		return nodes.size();
+	}
+
+	/**
+	 * Returns the number of turtles.
+	 */
+	int turtleCount() {
+		return turtleCount;
+	}
+
+	/**
+	 * Returns the number of panes.
+	 */
+	int paneCount() {
+		return paneCount;
+	}
+
+	/**
+	 * Returns objects in z-order (from back to front). The collection is a
+	 * live view that must not be modified.
+	 */
+	Collection<PaneObject> objectsInOrder() {
+		return objectsInOrder;
+	}
+
+	/**
+	 * Returns an array with all objects in z-order. The array is shared and it
+	 * must not be modified.
+	 */
+	PaneObject[] objectsSnapshot() {
+		if (objectsSnapshot == null) {
+			PaneObject[] result = new PaneObject[nodes.size()];
+			int idx = 0;
+			for (Node node = first; node != null; node = node.next) {
+				result[idx++] = node.object;
+			}
+			objectsSnapshot = result;
+		}
+
+		return objectsSnapshot;
+	}
+
+	/**
+	 * Returns an array with turtles in z-order. The array is shared and it
+	 * must not be modified.
+	 */
+	Turtle[] turtlesSnapshot() {
+		if (turtlesSnapshot == null) {
+			Turtle[] result = new Turtle[turtleCount];
+			int idx = 0;
+			for (Node node = first; node != null; node = node.next) {
+				if (node.object instanceof Turtle) {
+					result[idx++] = (Turtle) node.object;
+				}
+			}
+			turtlesSnapshot = result;
+		}
+
+		return turtlesSnapshot;
+	}
+
+	/**
+	 * Returns an array with panes in z-order. The array is shared and it must
+	 * not be modified.
+	 */
+	Pane[] panesSnapshot() {
+		if (panesSnapshot == null) {
+			Pane[] result = new Pane[paneCount];
+			int idx = 0;
+			for (Node node = first; node != null; node = node.next) {
+				if (node.object instanceof Pane) {
+					result[idx++] = (Pane) node.object;
+				}
+			}
+			panesSnapshot = result;
+		}
+
+		return panesSnapshot;
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Modifications
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Adds an object in front of all other objects.
+	 *
+	 * @return true, if the object was added, false, if the object is already
+	 *         in the collection.
+	 */
+	boolean add(PaneObject o) {
+		if (nodes.containsKey(o)) {
+			return false;
+		}
+
+		Node node = new Node(o);
+		nodes.put(o, node);
+		if (o instanceof Turtle) {
+			turtleCount++;
+		}
+
+		if (o instanceof Pane) {
+			paneCount++;
+		}
+
+		linkAfter(node, last);
+		invalidateSnapshots(o);
+		return true;
+	}
+
+	/**
+	 * Removes an object.
+	 *
+	 * @return true, if the object was removed, false, if the object is not in
+	 *         the collection.
+	 */
+	boolean remove(PaneObject o) {
+		Node node = nodes.remove(o);
+		if (node == null) {
+			return false;
+		}
+
+		if (o instanceof Turtle) {
+			turtleCount--;
+		}
+
+		if (o instanceof Pane) {
+			paneCount--;
+		}
+
+		unlink(node);
+		invalidateSnapshots(o);
+		return true;
+	}
+
+	/**
+	 * Moves an object in front of all other objects.
+	 */
+	void moveToFront(PaneObject o) {
+		Node node = nodes.get(o);
+		if (node == last) {
+			return;
+		}
+
+		unlink(node);
+		linkAfter(node, last);
+		invalidateSnapshots(o);
+	}
+
+	/**
+	 * Moves an object to back of all other objects.
+	 */
+	void moveToBack(PaneObject o) {
+		Node node = nodes.get(o);
+		if (node == first) {
+			return;
+		}
+
+		unlink(node);
+		linkAfter(node, null);
+		invalidateSnapshots(o);
+	}
+
+	/**
+	 * Moves an object directly in front of another object.
+	 */
+	void moveInFrontOf(PaneObject o, PaneObject location) {
+		Node node = nodes.get(o);
+		Node locationNode = nodes.get(location);
+		if ((node == locationNode) || (locationNode.next == node)) {
+			return;
+		}
+
+		unlink(node);
+		linkAfter(node, locationNode);
+		invalidateSnapshots(o);
+	}
+
+	/**
+	 * Moves an object directly to back of another object.
+	 */
+	void moveToBackOf(PaneObject o, PaneObject location) {
+		Node node = nodes.get(o);
+		Node locationNode = nodes.get(location);
+		if ((node == locationNode) || (locationNode.previous == node)) {
+			return;
+		}
+
+		unlink(node);
+		linkAfter(node, locationNode.previous);
+		invalidateSnapshots(o);
+	}
+
+	/**
+	 * Links a node directly in front of another node.
+	 *
+	 * @param node
+	 *            the node that is not in the list.
+	 * @param previous
+	 *            the node in the list after which the node is linked, or
+	 *            null, if the node should be the first node.
+	 */
+	private void linkAfter(Node node, Node previous) {
+		Node next = (previous != null) ? previous.next : first;
+		node.previous = previous;
+		node.next = next;
+		if (previous != null) {
+			previous.next = node;
+		} else {
+			first = node;
+		}
+
+		if (next != null) {
+			next.previous = node;
+		} else {
+			last = node;
+		}
+	}
+
+	/**
+	 * Unlinks a node from the list.
+	 */
+	private void unlink(Node node) {
+		if (node.previous != null) {
+			node.previous.next = node.next;
+		} else {
+			first = node.next;
+		}
+
+		if (node.next != null) {
+			node.next.previous = node.previous;
+		} else {
+			last = node.previous;
+		}
+
+		node.previous = null;
+		node.next = null;
+	}
+
+	/**
+	 * Invalidates snapshots of views containing an object that has been
+	 * added, removed or moved.
+	 */
+	private void invalidateSnapshots(PaneObject o) {
+		objectsSnapshot = null;
+		if (o instanceof Turtle) {
+			turtlesSnapshot = null;
+		}
+
+		if (o instanceof Pane) {
+			panesSnapshot = null;
+		}
+	}
+}
@@ -3,6 +3,8 @@ package sk.upjs.jpaz2;
 import java.awt.*;
 import java.awt.geom.*;
 import java.awt.image.*;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Transition effects for JPAZPanel during switching process (rebinding) from
@@ -86,10 +88,39 @@ public enum TransitionEffect {
 
 	/**
 	 * Basic class providing a core functionality to implement transition from
-	 * one pane content to another.
+	 * one pane content to another. All running transitions are driven by a
+	 * shared clock that ticks with refresh rate of the display. Images used by
+	 * transitions are taken from a pool of buffers.
 	 */
 	static abstract class Transition {
 
+		/**
+		 * Maximal number of buffers in the pool of buffers.
+		 */
+		private static final int MAX_POOLED_BUFFERS = 4;
+
+		/**
+		 * Refresh rate (frames per second) used when the refresh rate of the
+		 * display is unknown.
+		 */
+		private static final int DEFAULT_REFRESH_RATE = 60;
+
+		/**
+		 * Pool of buffers that are not used by any transition.
+		 */
+		private static final List<BufferedImage> bufferPool = new ArrayList<BufferedImage>();
+
+		/**
+		 * List of running transitions.
+		 */
+		private static final List<Transition> runningTransitions = new ArrayList<Transition>();
+
+		/**
+		 * Shared clock that drives all running transitions. The clock is
+		 * active only if there is a running transition.
+		 */
+		private static TickTimer clock = null;
+
 		/**
 		 * Content of the source (from) pane at time, when transition started.
 		 */
@@ -131,9 +162,17 @@ public enum TransitionEffect {
 		final private JPAZPanel panel;
 
 		/**
-		 * Tick timer that controls timing of transition.
+		 * Indicates whether the transition is running.
 		 */
-		private TickTimer tickTimer;
+		private boolean running = false;
+
+		/**
+		 * Indicates whether a repaint of the panel was requested and the frame
+		 * has not been painted yet. Ticks of the clock do not request new
+		 * frames while a frame is pending, i.e., frames are skipped when
+		 * painting is behind the clock.
+		 */
+		private boolean framePending = false;
 
 		/**
 		 * Backbuffer for the source pane.
@@ -145,6 +184,45 @@ public enum TransitionEffect {
 		 */
 		private BufferedImage targetBackbuffer;
 
+		/**
+		 * The target pane painted to the target backbuffer.
+		 */
+		private Pane targetPane;
+
+		/**
+		 * Align mode used when the target pane was painted to the target
+		 * backbuffer.
+		 */
+		private boolean targetAlignMode;
+
+		/**
+		 * Indicates that the target backbuffer does not reflect the current
+		 * content of the target pane.
+		 */
+		private boolean targetInvalidated = true;
+
+		/**
+		 * Listener that marks the target backbuffer as invalid whenever the
+		 * target pane changes.
+		 */
+		private final PaneChangeListener targetChangeListener = new PaneChangeListener() {
+			public void paneResized(PaneChangeEvent e) {
+				targetInvalidated = true;
+			}
+
+			public void paneMoved(PaneChangeEvent e) {
+				targetInvalidated = true;
+			}
+
+			public void paneInvalidated(PaneChangeEvent e) {
+				targetInvalidated = true;
+			}
+
+			public void paneRotationChanged(PaneChangeEvent e) {
+				targetInvalidated = true;
+			}
+		};
+
 		/**
 		 * Constructs implementation of a transition effect.
 		 * 
@@ -175,8 +253,7 @@ public enum TransitionEffect {
 				sourcePaneAlignMode = alignMode;
 
 				// create copy of the pane content
-				sourcePaneImage = new BufferedImage(sourcePane.getWidth(), sourcePane.getHeight(),
-						BufferedImage.TYPE_INT_ARGB_PRE);
+				sourcePaneImage = acquireBuffer(sourcePane.getWidth(), sourcePane.getHeight());
 				Graphics2D g2d = sourcePaneImage.createGraphics();
 				sourcePane.paintWithoutTransform(g2d);
 				g2d.dispose();
@@ -184,29 +261,70 @@ public enum TransitionEffect {
 		}
 
 		/**
-		 * Starts the transition with given refresh period. This method must be
-		 * called in the transition constructor.
+		 * Starts the transition. This method must be called in the transition
+		 * constructor.
 		 */
-		protected void startTransition(long refreshPeriod) {
+		protected void startTransition() {
 			synchronized (JPAZUtilities.getJPAZLock()) {
-				// refresh period must be at least 25 milliseconds
-				refreshPeriod = Math.max(25, refreshPeriod);
-
-				// create tick time
-				tickTimer = new TickTimer(false) {
-					@Override
-					protected void onTick() {
-						checkStop();
-						panel.repaint();
-					}
-				};
+				if (running)
+					return;
 
-				// set and enable tick timer
-				tickTimer.setTickPeriod(refreshPeriod);
-				tickTimer.setEnabled(true);
+				running = true;
+				runningTransitions.add(this);
+
+				// start the shared clock, if it is not running
+				if (clock == null) {
+					clock = new TickTimer("Transition clock", false) {
+						@Override
+						protected void onTick() {
+							tickRunningTransitions();
+						}
+					};
+					clock.setTickPeriod(getFramePeriod());
+				}
 			}
 		}
 
+		/**
+		 * Handles a tick of the shared clock.
+		 */
+		private static void tickRunningTransitions() {
+			for (Transition transition : new ArrayList<Transition>(runningTransitions))
+				transition.onClockTick();
+		}
+
+		/**
+		 * Handles a tick of the shared clock by this transition.
+		 */
+		private void onClockTick() {
+			checkStop();
+			if (running && !framePending) {
+				framePending = true;
+				panel.repaint();
+			}
+		}
+
+		/**
+		 * Returns period of the shared clock in milliseconds derived from
+		 * refresh rate of the display.
+		 */
+		private static long getFramePeriod() {
+			int refreshRate = DisplayMode.REFRESH_RATE_UNKNOWN;
+			try {
+				if (!GraphicsEnvironment.isHeadless()) {
+					refreshRate = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+							.getDisplayMode().getRefreshRate();
+				}
+			} catch (Exception e) {
+				// refresh rate remains unknown
+			}
+
+			if (refreshRate <= 0)
+				refreshRate = DEFAULT_REFRESH_RATE;
+
+			return Math.max(1, Math.round(1000.0 / refreshRate));
+		}
+
 		/**
 		 * Checks whether transition must be stopped.
 		 */
@@ -226,7 +344,7 @@ public enum TransitionEffect {
 		 */
 		public boolean isCompleted() {
 			synchronized (JPAZUtilities.getJPAZLock()) {
-				return (tickTimer == null);
+				return !running;
 			}
 		}
 
@@ -235,14 +353,68 @@ public enum TransitionEffect {
 		 */
 		public void stop() {
 			synchronized (JPAZUtilities.getJPAZLock()) {
-				if (tickTimer != null) {
-					tickTimer.setEnabled(false);
-					tickTimer = null;
+				if (running) {
+					running = false;
+					runningTransitions.remove(this);
+					if (runningTransitions.isEmpty() && (clock != null)) {
+						clock.setTickPeriod(0);
+						clock = null;
+					}
+
+					// release all resources of the transition
+					if (targetPane != null) {
+						targetPane.removePaneChangeListener(targetChangeListener);
+						targetPane = null;
+					}
+
+					releaseBuffer(sourcePaneImage);
+					releaseBuffer(sourceBackbuffer);
+					releaseBuffer(targetBackbuffer);
+					sourcePaneImage = null;
+					sourceBackbuffer = null;
+					targetBackbuffer = null;
+
 					panel.repaint();
 				}
 			}
 		}
 
+		/**
+		 * Returns a cleared buffer of given size. If possible, the buffer is
+		 * taken from the pool of buffers.
+		 */
+		private static BufferedImage acquireBuffer(int width, int height) {
+			width = Math.max(width, 1);
+			height = Math.max(height, 1);
+
+			for (int i = 0; i < bufferPool.size(); i++) {
+				BufferedImage buffer = bufferPool.get(i);
+				if ((buffer.getWidth() == width) && (buffer.getHeight() == height)) {
+					bufferPool.remove(i);
+					Graphics2D g2d = buffer.createGraphics();
+					g2d.setBackground(new Color(0, 0, 0, 0));
+					g2d.clearRect(0, 0, width, height);
+					g2d.dispose();
+					return buffer;
+				}
+			}
+
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+
+		/**
+		 * Returns a buffer to the pool of buffers.
+		 */
+		private static void releaseBuffer(BufferedImage buffer) {
+			if (buffer == null)
+				return;
+
+			if (bufferPool.size() >= MAX_POOLED_BUFFERS)
+				bufferPool.remove(0);
+
+			bufferPool.add(buffer);
+		}
+
 		/**
 		 * Paints the source pane to given image.
 		 * 
@@ -307,24 +479,52 @@ public enum TransitionEffect {
 		 */
 		void paintToPanel(Pane pane, boolean alignMode, Graphics2D g, int width, int height) {
 			synchronized (JPAZUtilities.getJPAZLock()) {
+				framePending = false;
+				if (!running)
+					return;
+
+				width = Math.max(width, 1);
+				height = Math.max(height, 1);
+
 				// create or change backbuffer for the source pane
 				if ((sourceBackbuffer == null) || (sourceBackbuffer.getWidth() != width)
 						|| (sourceBackbuffer.getHeight() != height)) {
-					sourceBackbuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+					releaseBuffer(sourceBackbuffer);
+					sourceBackbuffer = acquireBuffer(width, height);
 					paintSourceToImage(sourceBackbuffer);
 				}
 
 				// create backbuffer for the target pane.
 				if ((targetBackbuffer == null) || (targetBackbuffer.getWidth() != width)
-						|| (targetBackbuffer.getHeight() != height))
-					targetBackbuffer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+						|| (targetBackbuffer.getHeight() != height)) {
+					releaseBuffer(targetBackbuffer);
+					targetBackbuffer = acquireBuffer(width, height);
+					targetInvalidated = true;
+				}
 
-				// repaint backbuffer for the target pane
-				Graphics2D g2d = targetBackbuffer.createGraphics();
-				g2d.setBackground(new Color(0, 0, 0, 0));
-				g2d.clearRect(0, 0, width, height);
-				g2d.dispose();
-				paintPaneToImage(targetBackbuffer, pane, alignMode);
+				// listen to changes of the target pane
+				if ((pane != targetPane) || (alignMode != targetAlignMode)) {
+					if (targetPane != null)
+						targetPane.removePaneChangeListener(targetChangeListener);
+
+					targetPane = pane;
+					targetAlignMode = alignMode;
+					if (targetPane != null)
+						targetPane.addPaneChangeListener(targetChangeListener);
+
+					targetInvalidated = true;
+				}
+
+				// repaint backbuffer for the target pane, if the target pane
+				// changed
+				if (targetInvalidated) {
+					targetInvalidated = false;
+					Graphics2D g2d = targetBackbuffer.createGraphics();
+					g2d.setBackground(new Color(0, 0, 0, 0));
+					g2d.clearRect(0, 0, width, height);
+					g2d.dispose();
+					paintPaneToImage(targetBackbuffer, pane, alignMode);
+				}
 
 				// calculate current progress in the transition
 				long currentTime = System.currentTimeMillis() - startTime;
@@ -333,14 +533,9 @@ public enum TransitionEffect {
 				percentage = Math.min(percentage, 1);
 				percentage = Math.max(percentage, 0);
 
-				// check whether the transition is stopped - if it is stopped,
-				// then it is considered as completed
-				if (tickTimer == null)
-					percentage = 1;
-
 				// call painting defined by the subclass implementation
-				g2d = (Graphics2D) g.create();
-				onTransitionPaint(g2d, Math.min(percentage, 1), sourceBackbuffer, targetBackbuffer);
+				Graphics2D g2d = (Graphics2D) g.create();
+				onTransitionPaint(g2d, percentage, sourceBackbuffer, targetBackbuffer);
 				g2d.dispose();
 			}
 		}
@@ -375,7 +570,7 @@ public enum TransitionEffect {
 
 		FadeOutFadeInTransition(JPAZPanel panel, long duration) {
 			super(panel, duration);
-			startTransition(50);
+			startTransition();
 		}
 
 		@Override
@@ -411,7 +606,7 @@ public enum TransitionEffect {
 		FadeOutColorFadeInTransition(JPAZPanel panel, long duration, Color color) {
 			super(panel, duration);
 			this.color = color;
-			startTransition(50);
+			startTransition();
 		}
 
 		@Override
@@ -465,7 +660,7 @@ public enum TransitionEffect {
 			dy = -Math.sin(Math.toRadians(90 - direction));
 
 			this.direction = direction;
-			startTransition(50);
+			startTransition();
 		}
 
 		@Override
@@ -5,6 +5,8 @@ import java.awt.geom.*;
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.swing.event.ChangeListener;
+
 import sk.upjs.jpaz2.animators.*;
 
 /**
@@ -460,6 +462,11 @@ public class Turtle implements PaneObject {
 	 */
 	private volatile String toStringResult;
 
+	/**
+	 * Listeners that are notified about changes of the turtle state.
+	 */
+	private final ChangeListenerList stateChangeListeners = new ChangeListenerList(this);
+
 	// ---------------------------------------------------------------------------------------------------
 	// Constructors
 	// ---------------------------------------------------------------------------------------------------
@@ -598,9 +605,12 @@ public class Turtle implements PaneObject {
 
 				if (viewBoundToDirection) {
 					updateViewAccordingToDirection();
+					stateChangeListeners.fireStateChanged();
 				} else {
 					if (visible) {
 						invalidateParent();
+					} else {
+						stateChangeListeners.fireStateChanged();
 					}
 				}
 			}
@@ -1193,6 +1203,8 @@ public class Turtle implements PaneObject {
 
 				if (visible) {
 					invalidateParent();
+				} else {
+					stateChangeListeners.fireStateChanged();
 				}
 			}
 		}
@@ -1882,6 +1894,19 @@ public class Turtle implements PaneObject {
 		}
 	}
 
+	/**
+	 * Fills the area of the same color around the turtle position with the
+	 * fill color (bucket fill).
+	 */
+	public void floodFill() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			assertNoAnimation();
+			if (parentPane != null) {
+				parentPane.floodFill((int) Math.floor(x), (int) Math.floor(y), fillColor, 0);
+			}
+		}
+	}
+
 	/**
 	 * Paints a circle with specified radius.
 	 * 
@@ -2262,9 +2287,32 @@ public class Turtle implements PaneObject {
 			if (parentPane != null) {
 				parentPane.invalidate();
 			}
+
+			stateChangeListeners.fireStateChanged();
 		}
 	}
 
+	/**
+	 * Adds a listener that is notified whenever the visual appearance or the
+	 * location of the turtle changes.
+	 * 
+	 * @param listener
+	 *            the listener to be added.
+	 */
+	public void addChangeListener(ChangeListener listener) {
+		stateChangeListeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener that is notified about changes of the turtle.
+	 * 
+	 * @param listener
+	 *            the listener to be removed.
+	 */
+	public void removeChangeListener(ChangeListener listener) {
+		stateChangeListeners.remove(listener);
+	}
+
 	@Override
 	public String toString() {
 		return toStringResult;
@@ -0,0 +1,225 @@
+package sk.upjs.jpaz2.inspector;
+
+import java.beans.*;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The result of introspection of a class hierarchy. It contains properties
+ * and methods that can be displayed by the object inspector grouped by classes
+ * where they are declared. Results of introspection are immutable and they
+ * are shared by all object inspectors.
+ */
+final class OIClassStructure {
+
+	// --------------------------------------------------------------------------------------------
+	// ClassInfo
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Properties and methods declared in a class of the class hierarchy.
+	 */
+	static final class ClassInfo {
+		/**
+		 * The class
+		 */
+		final Class<?> cl;
+
+		/**
+		 * Readable properties declared in the class in alphabetical order
+		 */
+		final List<PropertyDescriptor> properties;
+
+		/**
+		 * Visible methods declared in the class in alphabetical order
+		 */
+		final List<MethodDescriptor> methods;
+
+		/**
+		 * Constructs the information about a class.
+		 */
+		private ClassInfo(Class<?> cl, List<PropertyDescriptor> properties,
+				List<MethodDescriptor> methods) {
+			this.cl = cl;
+			this.properties = Collections.unmodifiableList(properties);
+			this.methods = Collections.unmodifiableList(methods);
+		}
+	}
+
+	// --------------------------------------------------------------------------------------------
+	// Cache
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Key used for introspection without a stop class.
+	 */
+	private static final Object NO_STOP_CLASS = new Object();
+
+	/**
+	 * Introspection results of classes. For each class, the results are
+	 * stored with respect to stop classes.
+	 */
+	private static final ClassValue<ConcurrentMap<Object, OIClassStructure>> structures = new ClassValue<ConcurrentMap<Object, OIClassStructure>>() {
+		@Override
+		protected ConcurrentMap<Object, OIClassStructure> computeValue(Class<?> type) {
+			return new ConcurrentHashMap<Object, OIClassStructure>();
+		}
+	};
+
+	/**
+	 * Classes of the class hierarchy starting with the introspected class.
+	 */
+	private final List<ClassInfo> classes;
+
+	/**
+	 * Constructs the introspection result.
+	 */
+	private OIClassStructure(List<ClassInfo> classes) {
+		this.classes = Collections.unmodifiableList(classes);
+	}
+
+	/**
+	 * Returns classes of the introspected class hierarchy starting with the
+	 * introspected class.
+	 */
+	public List<ClassInfo> getClasses() {
+		return classes;
+	}
+
+	/**
+	 * Returns the introspection result of a class.
+	 *
+	 * @param type
+	 *            the introspected class
+	 * @param stopClass
+	 *            the class where the introspection stops, null for the whole
+	 *            class hierarchy
+	 * @return the result of introspection
+	 */
+	public static OIClassStructure get(Class<?> type, Class<?> stopClass) {
+		ConcurrentMap<Object, OIClassStructure> cache = structures.get(type);
+		Object key = (stopClass != null) ? stopClass : NO_STOP_CLASS;
+		OIClassStructure result = cache.get(key);
+		if (result == null) {
+			result = introspect(type, stopClass);
+			OIClassStructure previous = cache.putIfAbsent(key, result);
+			if (previous != null)
+				result = previous;
+		}
+
+		return result;
+	}
+
+	// --------------------------------------------------------------------------------------------
+	// Introspection
+	// --------------------------------------------------------------------------------------------
+
+	/**
+	 * Introspects a class hierarchy.
+	 *
+	 * @param type
+	 *            the introspected class
+	 * @param stopClass
+	 *            the class where the introspection stops
+	 * @return the result of introspection
+	 */
+	private static OIClassStructure introspect(Class<?> type, Class<?> stopClass) {
+		// load bean info
+		BeanInfo bInfo = null;
+		try {
+			bInfo = Introspector.getBeanInfo(type, stopClass);
+		} catch (Exception e) {
+			return new OIClassStructure(new ArrayList<ClassInfo>());
+		}
+
+		// create inheritance list
+		List<Class<?>> hierarchy = new ArrayList<Class<?>>();
+		Map<Class<?>, List<PropertyDescriptor>> properties = new HashMap<Class<?>, List<PropertyDescriptor>>();
+		Map<Class<?>, List<MethodDescriptor>> methods = new HashMap<Class<?>, List<MethodDescriptor>>();
+		Class<?> objectClass = type;
+		while ((objectClass != null) && (objectClass != stopClass)) {
+			hierarchy.add(objectClass);
+			properties.put(objectClass, new ArrayList<PropertyDescriptor>());
+			methods.put(objectClass, new ArrayList<MethodDescriptor>());
+			objectClass = objectClass.getSuperclass();
+		}
+
+		// distribute properties to appropriate classes, only properties that
+		// provide at least reading capability and that are not indexed are
+		// considered
+		PropertyDescriptor[] propertyDescriptors = bInfo.getPropertyDescriptors();
+		if (propertyDescriptors != null) {
+			for (PropertyDescriptor pd : propertyDescriptors) {
+				if ((pd.getReadMethod() == null) || (pd instanceof IndexedPropertyDescriptor))
+					continue;
+
+				List<PropertyDescriptor> classProperties = properties
+						.get(pd.getReadMethod().getDeclaringClass());
+				if (classProperties != null)
+					classProperties.add(pd);
+			}
+		}
+
+		// distribute methods to appropriate classes
+		MethodDescriptor[] methodDescriptors = bInfo.getMethodDescriptors();
+		if (methodDescriptors != null) {
+			for (MethodDescriptor md : methodDescriptors) {
+				if (!isVisibleMethod(md.getMethod()))
+					continue;
+
+				List<MethodDescriptor> classMethods = methods.get(md.getMethod().getDeclaringClass());
+				if (classMethods != null)
+					classMethods.add(md);
+			}
+		}
+
+		// order properties and methods of each class in alphabetical order
+		List<ClassInfo> classes = new ArrayList<ClassInfo>();
+		for (Class<?> cl : hierarchy) {
+			List<PropertyDescriptor> classProperties = properties.get(cl);
+			Collections.sort(classProperties, new Comparator<PropertyDescriptor>() {
+				public int compare(PropertyDescriptor o1, PropertyDescriptor o2) {
+					return o1.getDisplayName().compareTo(o2.getDisplayName());
+				}
+			});
+
+			List<MethodDescriptor> classMethods = methods.get(cl);
+			Collections.sort(classMethods, new Comparator<MethodDescriptor>() {
+				public int compare(MethodDescriptor o1, MethodDescriptor o2) {
+					return o1.getDisplayName().compareTo(o2.getDisplayName());
+				}
+			});
+
+			classes.add(new ClassInfo(cl, classProperties, classMethods));
+		}
+
+		return new OIClassStructure(classes);
+	}
+
+	/**
+	 * Returns whether method is visible in the object inspector.
+	 *
+	 * @param method
+	 *            the method.
+	 * @return true, if the method is visible, false otherwise.
+	 */
+	private static boolean isVisibleMethod(Method method) {
+		// hide wait methods of the Object
+		if (Object.class.equals(method.getDeclaringClass())) {
+			if ("wait".equals(method.getName())) {
+				return false;
+			}
+
+			if ("notify".equals(method.getName())) {
+				return false;
+			}
+
+			if ("notifyAll".equals(method.getName())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+}
@@ -7,7 +7,9 @@ import javax.swing.table.*;
 
 /**
  * The manager of supported class types. It contains list of supported types and
- * provides table renderers and editors for them.
+ * provides table renderers and editors for them. Records resolved for
+ * concrete classes are memoized, since they are requested whenever a table
+ * cell is rendered.
  */
 class OIClassSupporter {
 
@@ -29,11 +31,38 @@ class OIClassSupporter {
 		TableCellEditor editor;
 	}
 
+	/**
+	 * Record resolved for a concrete class type.
+	 */
+	private static class ResolvedRecord {
+		/**
+		 * Record of the class type or of its nearest supported super type,
+		 * null if the class type is not supported
+		 */
+		ClassRecord record;
+
+		/**
+		 * External editor for read-only viewing adapted to the class type
+		 */
+		TableCellEditor readOnlyEditor;
+
+		/**
+		 * Standard editor adapted to the class type
+		 */
+		TableCellEditor editor;
+	}
+
 	/**
 	 * The map for supported classes
 	 */
 	private Map<Class<?>, ClassRecord> supportedClasses = new HashMap<Class<?>, ClassRecord>();
 
+	/**
+	 * Records resolved for concrete class types. The cache is cleared when a
+	 * supported class is added.
+	 */
+	private final Map<Class<?>, ResolvedRecord> resolvedRecords = new HashMap<Class<?>, ResolvedRecord>();
+
 	/**
 	 * Add a supported class
 	 * 
@@ -59,28 +88,97 @@ class OIClassSupporter {
 		cr.readOnlyEditor = readOnlyEditor;
 		cr.editor = editor;
 
-		supportedClasses.put(aClass, cr);
+		synchronized (this) {
+			supportedClasses.put(aClass, cr);
+			resolvedRecords.clear();
+		}
 	}
 
 	/**
-	 * Returns a class record for a specified class type
+	 * Returns the record resolved for a concrete class type. Resolved records
+	 * are cached.
 	 * 
 	 * @param aClass
 	 *            the class type
 	 */
-	private ClassRecord getClassRecord(Class<?> aClass) {
-		ClassRecord result = null;
-		while (aClass != null) {
-			result = supportedClasses.get(aClass);
-			if (result != null)
-				break;
+	private synchronized ResolvedRecord getResolvedRecord(Class<?> aClass) {
+		ResolvedRecord result = resolvedRecords.get(aClass);
+		if (result == null) {
+			result = resolveRecord(aClass);
+			resolvedRecords.put(aClass, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Resolves the record for a concrete class type. The record of the class
+	 * or of its nearest superclass is preferred before records of implemented
+	 * interfaces.
+	 * 
+	 * @param aClass
+	 *            the class type
+	 */
+	private ResolvedRecord resolveRecord(Class<?> aClass) {
+		ResolvedRecord result = new ResolvedRecord();
+
+		// search superclasses
+		for (Class<?> cl = aClass; (cl != null) && (result.record == null); cl = cl.getSuperclass())
+			result.record = supportedClasses.get(cl);
 
-			aClass = aClass.getSuperclass();
+		// search interfaces in breadth-first order
+		if (result.record == null) {
+			Set<Class<?>> visited = new HashSet<Class<?>>();
+			LinkedList<Class<?>> queue = new LinkedList<Class<?>>();
+			for (Class<?> cl = aClass; cl != null; cl = cl.getSuperclass())
+				queue.addAll(Arrays.asList(cl.getInterfaces()));
+
+			while (!queue.isEmpty() && (result.record == null)) {
+				Class<?> iface = queue.removeFirst();
+				if (visited.add(iface)) {
+					result.record = supportedClasses.get(iface);
+					queue.addAll(Arrays.asList(iface.getInterfaces()));
+				}
+			}
+		}
+
+		if (result.record != null) {
+			result.readOnlyEditor = adaptEditor(result.record.readOnlyEditor, aClass);
+			result.editor = adaptEditor(result.record.editor, aClass);
 		}
 
 		return result;
 	}
 
+	/**
+	 * Adapts an editor to a concrete class type.
+	 * 
+	 * @param editor
+	 *            the editor
+	 * @param aClass
+	 *            the class type
+	 */
+	private static TableCellEditor adaptEditor(TableCellEditor editor, Class<?> aClass) {
+		// special code for advanced cell support
+		if (editor instanceof OIEnumEditor)
+			return new OIEnumEditor(aClass);
+
+		return editor;
+	}
+
+	/**
+	 * Returns a class record for a specified class type
+	 * 
+	 * @param aClass
+	 *            the class type
+	 */
+	private ClassRecord getClassRecord(Class<?> aClass) {
+		if (aClass == null)
+			return null;
+
+		return getResolvedRecord(aClass).record;
+	}
+
 	/**
 	 * Returns whether reading the class values (displaying the values) is
 	 * supported by appropriate classes.
@@ -148,22 +246,16 @@ class OIClassSupporter {
 	 *            true, if we ask for an read-only editor
 	 */
 	public TableCellEditor getTableCellEditor(Class<?> aClass, boolean readOnly) {
-		ClassRecord cr = getClassRecord(aClass);
-		if (cr == null)
+		if (aClass == null)
 			return null;
-		else {
-			TableCellEditor result = null;
-			if (readOnly)
-				result = cr.readOnlyEditor;
-			else
-				result = cr.editor;
-
-			// special code for advanced cell support
-			if (result instanceof OIEnumEditor)
-				result = new OIEnumEditor(aClass);
-
-			return result;
-		}
+
+		ResolvedRecord rr = getResolvedRecord(aClass);
+		if (rr.record == null)
+			return null;
+		else if (readOnly)
+			return rr.readOnlyEditor;
+		else
+			return rr.editor;
 	}
 
 	/**
@@ -3,9 +3,16 @@ package sk.upjs.jpaz2.inspector;
 import java.beans.*;
 import java.lang.reflect.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * The class providing usefull static methods for method invocation.
+ * Invocations are executed by a bounded pool of worker threads with a bounded
+ * queue of waiting invocations. Each invocation can be cancelled and it can be
+ * limited by a timeout. A cancelled invocation interrupts its worker thread,
+ * however, the invoked method can ignore the interruption and keep running.
+ * Hence, the result of an invocation and the termination of its execution are
+ * reported separately.
  */
 final class OIInvoker {
 
@@ -14,26 +21,258 @@ final class OIInvoker {
 	 */
 	public static interface ResultHandler {
 		/**
-		 * Handles the result of method invocation. It is called called in the
-		 * thread where the method was invoked.
-		 * 
+		 * Handles the result of method invocation. It is called in the thread
+		 * where the method was invoked or in the thread that cancelled the
+		 * invocation.
+		 *
 		 * @param result
 		 *            the result of the invocation
 		 * @param thrownException
 		 *            the exception thrown during execution of the method or
-		 *            during method invocation
+		 *            during method invocation. A cancelled invocation is
+		 *            reported by CancellationException, an invocation that
+		 *            exceeded its timeout by TimeoutException.
 		 */
 		public void handleResult(Object result, Exception thrownException);
+
+		/**
+		 * Handles termination of the invocation, i.e., the invoked code is no
+		 * longer executed. It is called after the result is handled. For a
+		 * cancelled invocation, it can be called much later than the result
+		 * is handled, since the invoked method can ignore the interruption.
+		 * It is called in the worker thread that executed the invocation or
+		 * in the thread that cancelled an invocation that was not started.
+		 */
+		public void handleTermination();
+	}
+
+	/**
+	 * Maximal number of concurrently executed invocations.
+	 */
+	private static final int MAX_WORKERS = 4;
+
+	/**
+	 * Maximal number of invocations waiting for a free worker.
+	 */
+	private static final int MAX_QUEUED_INVOCATIONS = 32;
+
+	/**
+	 * Time in seconds after which idle workers are terminated.
+	 */
+	private static final long WORKER_KEEP_ALIVE = 30;
+
+	/**
+	 * Executor service providing threads for invoked methods
+	 */
+	private static final ThreadPoolExecutor executor;
+
+	/**
+	 * Executor service cancelling invocations that exceeded their timeout.
+	 */
+	private static final ScheduledThreadPoolExecutor watchdog;
+
+	static {
+		final AtomicInteger workerCounter = new AtomicInteger();
+		executor = new ThreadPoolExecutor(MAX_WORKERS, MAX_WORKERS, WORKER_KEEP_ALIVE, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(MAX_QUEUED_INVOCATIONS), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JPAZ inspector invoker " + workerCounter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		executor.allowCoreThreadTimeOut(true);
+
+		watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JPAZ inspector watchdog");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		watchdog.setRemoveOnCancelPolicy(true);
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Invocation
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Future of an invocation executed by the pool of workers.
+	 */
+	static class Invocation extends FutureTask<Object> {
+
+		/**
+		 * Execution state of an invocation waiting for a worker.
+		 */
+		private static final int WAITING = 0;
+
+		/**
+		 * Execution state of an invocation executed by a worker.
+		 */
+		private static final int RUNNING = 1;
+
+		/**
+		 * Execution state of an invocation whose code is no longer executed.
+		 */
+		private static final int TERMINATED = 2;
+
+		/**
+		 * Timeout of the invocation in milliseconds, 0 for no timeout.
+		 */
+		private final long timeout;
+
+		/**
+		 * The object that process the result of the invocation.
+		 */
+		private final ResultHandler resultHandler;
+
+		/**
+		 * Indicates whether the invocation was cancelled due to the timeout.
+		 */
+		private volatile boolean timedOut;
+
+		/**
+		 * Execution state of the invocation: WAITING, RUNNING or TERMINATED.
+		 */
+		private final AtomicInteger executionState = new AtomicInteger(WAITING);
+
+		/**
+		 * Constructs the invocation.
+		 *
+		 * @param callable
+		 *            the invocation code
+		 * @param timeout
+		 *            the timeout in milliseconds, 0 for no timeout
+		 * @param resultHandler
+		 *            the object that process the result of the invocation, can
+		 *            be null
+		 */
+		Invocation(Callable<Object> callable, long timeout, ResultHandler resultHandler) {
+			super(callable);
+			this.timeout = timeout;
+			this.resultHandler = resultHandler;
+		}
+
+		@Override
+		public void run() {
+			// invocation cancelled before it was started
+			if (!executionState.compareAndSet(WAITING, RUNNING))
+				return;
+
+			ScheduledFuture<?> timeoutCheck = null;
+			if ((timeout > 0) && !isDone()) {
+				timeoutCheck = watchdog.schedule(new Runnable() {
+					public void run() {
+						timedOut = true;
+						cancel(true);
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
+
+			try {
+				super.run();
+			} finally {
+				if (timeoutCheck != null)
+					timeoutCheck.cancel(false);
+
+				// the worker has left the invoked code, possibly long after
+				// the invocation was cancelled
+				executionState.set(TERMINATED);
+				if (resultHandler != null)
+					resultHandler.handleTermination();
+			}
+		}
+
+		/**
+		 * Completes the invocation with an exception thrown before it was
+		 * executed.
+		 *
+		 * @param e
+		 *            the exception
+		 */
+		void fail(Exception e) {
+			setException(e);
+		}
+
+		/**
+		 * Returns whether the invocation was cancelled due to its timeout.
+		 */
+		public boolean isTimedOut() {
+			return timedOut;
+		}
+
+		/**
+		 * Returns whether the invoked code is no longer executed. A cancelled
+		 * invocation can be still executed, if the invoked method ignores
+		 * the interruption.
+		 */
+		public boolean isTerminated() {
+			return executionState.get() == TERMINATED;
+		}
+
+		@Override
+		protected void done() {
+			// remove cancelled invocation from the queue
+			if (isCancelled())
+				executor.remove(this);
+
+			// an invocation that was not started (cancelled or rejected) is
+			// terminated immediately
+			boolean terminated = executionState.compareAndSet(WAITING, TERMINATED);
+
+			if (resultHandler == null)
+				return;
+
+			Object result = null;
+			Exception thrownException = null;
+			if (isCancelled()) {
+				if (timedOut)
+					thrownException = new TimeoutException("The invocation exceeded the timeout of " + timeout + " ms.");
+				else
+					thrownException = new CancellationException("The invocation was cancelled.");
+			} else {
+				try {
+					result = get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception)
+						thrownException = (Exception) cause;
+					else
+						thrownException = e;
+				} catch (Exception e) {
+					thrownException = e;
+				}
+			}
+
+			resultHandler.handleResult(result, thrownException);
+			if (terminated)
+				resultHandler.handleTermination();
+		}
 	}
 
 	/**
-	 * Executor service providing threads for invoced methods
+	 * Submits an invocation to the pool of workers.
+	 *
+	 * @param invocation
+	 *            the invocation
 	 */
-	private static ExecutorService executor = Executors.newCachedThreadPool();
+	private static void submit(Invocation invocation) {
+		try {
+			executor.execute(invocation);
+		} catch (RejectedExecutionException e) {
+			invocation.fail(new RejectedExecutionException(
+					"Too many invocations are running or waiting for execution, try it later."));
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Invocation methods
+	// ---------------------------------------------------------------------------------------------------
 
 	/**
 	 * Invokes a setter of the property.
-	 * 
+	 *
 	 * @param object
 	 *            the object whose property is going to be changed
 	 * @param p
@@ -43,45 +282,45 @@ final class OIInvoker {
 	 *            the new value of the property
 	 * @return an object that allows to wait while the execution is not done
 	 */
-	public static Future<Void> changePropertyValue(final Object object,
-			final PropertyDescriptor p, final Object newValue) {
-		return executor.submit(new Callable<Void>() {
-			public Void call() throws Exception {
+	public static Future<?> changePropertyValue(final Object object, final PropertyDescriptor p,
+			final Object newValue) {
+		Invocation invocation = new Invocation(new Callable<Object>() {
+			public Object call() throws Exception {
 				p.getWriteMethod().invoke(object, newValue);
 				return null;
 			}
-		});
+		}, 0, null);
+
+		submit(invocation);
+		return invocation;
 	}
 
 	/**
 	 * Invokes the method.
-	 * 
+	 *
 	 * @param object
 	 *            the object whose method is invoked
 	 * @param method
 	 *            the method to be invoked
 	 * @param parameters
 	 *            the parameters of the method
+	 * @param timeout
+	 *            the timeout of the invocation in milliseconds, 0 for no
+	 *            timeout. The timeout is measured from start of the execution.
 	 * @param resultProcessor
 	 *            the object that process the returned value of the invocation
+	 * @return the future of the invocation that allows to cancel the
+	 *         invocation
 	 */
-	public static void executeMethod(final Object object, final Method method,
-			final Object[] parameters, final ResultHandler resultProcessor) {
-		executor.submit(new Callable<Void>() {
-			public Void call() throws Exception {
-				Exception catchedException = null;
-				Object result = null;
-				try {
-					result = method.invoke(object, parameters);
-				} catch (Exception e) {
-					catchedException = e;
-				}
-
-				if (resultProcessor != null)
-					resultProcessor.handleResult(result, catchedException);
-
-				return null;
+	public static Invocation executeMethod(final Object object, final Method method, final Object[] parameters,
+			long timeout, final ResultHandler resultProcessor) {
+		Invocation invocation = new Invocation(new Callable<Object>() {
+			public Object call() throws Exception {
+				return method.invoke(object, parameters);
 			}
-		});
+		}, timeout, resultProcessor);
+
+		submit(invocation);
+		return invocation;
 	}
 }
@@ -5,12 +5,11 @@ import java.awt.event.*;
 import java.beans.*;
 import java.lang.reflect.*;
 import java.util.*;
+import java.util.concurrent.*;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
 
-import com.thoughtworks.paranamer.*;
-
 import sk.upjs.jpaz2.JPAZUtilities;
 import sk.upjs.jpaz2.inspector.OIInvoker.*;
 
@@ -169,14 +168,25 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 	// --------------------------------------------------------------------------------------------
 
 	/**
-	 * Shared instance of Paranamer that reads parameter names from bytecode
+	 * Map that maps objects to list of open invocation frames.
 	 */
-	private static final Paranamer parameterNameReader = new CachingParanamer(new AdaptiveParanamer());
+	private static final Map<Object, ObjectDetails> objects = new IdentityHashMap<>();
 
 	/**
-	 * Map that maps objects to list of open invocation frames.
+	 * Timeouts (in milliseconds) that can be selected for an invocation, 0
+	 * for no timeout.
 	 */
-	private static final Map<Object, ObjectDetails> objects = new IdentityHashMap<>();
+	private static final long[] TIMEOUTS = { 0, 1000, 5000, 30000, 120000 };
+
+	/**
+	 * Labels of selectable timeouts.
+	 */
+	private static final String[] TIMEOUT_LABELS = { "No timeout", "1 s", "5 s", "30 s", "2 min" };
+
+	/**
+	 * Index of the timeout selected in the last opened frame.
+	 */
+	private static int lastTimeoutIndex = 0;
 
 	// --------------------------------------------------------------------------------------------
 	// Instance variables
@@ -193,9 +203,9 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 	private final Method method;
 
 	/**
-	 * True, if the method for invocation can provide parameter names
+	 * Names of parameters of the method (null, if unavailable)
 	 */
-	private boolean methodSupportsParameterNames = false;
+	private String[] parameterNames;
 
 	/**
 	 * Table model for method parameters
@@ -212,6 +222,35 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 	 */
 	private JButton executeButton;
 
+	/**
+	 * Button for cancelling the running invocation
+	 */
+	private JButton cancelButton;
+
+	/**
+	 * Combo box for selecting timeout of invocations
+	 */
+	private JComboBox<String> timeoutComboBox;
+
+	/**
+	 * The running invocation started by this frame, null if there is no
+	 * running invocation. A cancelled invocation is running until the invoked
+	 * method returns.
+	 */
+	private Invocation runningInvocation;
+
+	/**
+	 * Indicates whether the result of the running invocation has been
+	 * handled.
+	 */
+	private boolean invocationResultHandled;
+
+	/**
+	 * Indicates whether the running invocation has terminated, i.e., the
+	 * invoked method is no longer executed.
+	 */
+	private boolean invocationTerminated;
+
 	/**
 	 * Table with parameters
 	 */
@@ -268,12 +307,8 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 			}
 		});
 
-		// check whether parameter names are available
-		String[] parameterNames = parameterNameReader.lookupParameterNames(method, false);
-		if ((parameterNames == null) || (parameterNames.length == 0))
-			methodSupportsParameterNames = false;
-		else
-			methodSupportsParameterNames = true;
+		// read parameter names if available
+		parameterNames = OIParameterNames.lookup(method);
 
 		// GUI actions
 		initializeGUI();
@@ -374,11 +409,6 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 	 * Creates and initializes GUI component for editing method parameters.
 	 */
 	private void constructParametersPart() {
-		// get parameter names if available
-		String[] parameterNames = null;
-		if (methodSupportsParameterNames)
-			parameterNames = parameterNameReader.lookupParameterNames(method, false);
-
 		// create table model
 		parametersTM = new ParametersTableModel();
 		parametersTM.rowBinding = new ArrayList<Object>();
@@ -394,7 +424,7 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 		}
 
 		// setup visual aspects of GUI for editing parameters
-		if (methodSupportsParameterNames)
+		if (parameterNames != null)
 			parametersTM.setColumnNames("Name (Type)", "Value");
 		else
 			parametersTM.setColumnNames("Type", "Value");
@@ -453,7 +483,34 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 			}
 		});
 		executeButton.setPreferredSize(new Dimension(100, 25));
-		resultPanel.add(executeButton, BorderLayout.PAGE_START);
+
+		// create controls for timeout and cancellation of invocation
+		timeoutComboBox = new JComboBox<String>(TIMEOUT_LABELS);
+		timeoutComboBox.setSelectedIndex(lastTimeoutIndex);
+		timeoutComboBox.setToolTipText("Timeout of execution");
+		timeoutComboBox.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				lastTimeoutIndex = timeoutComboBox.getSelectedIndex();
+			}
+		});
+
+		cancelButton = new JButton("Cancel");
+		cancelButton.setEnabled(false);
+		cancelButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				cancelMethod();
+			}
+		});
+
+		JPanel controlPanel = new JPanel();
+		controlPanel.setLayout(new BorderLayout(5, 0));
+		controlPanel.add(executeButton, BorderLayout.CENTER);
+		JPanel invocationPanel = new JPanel();
+		invocationPanel.setLayout(new BorderLayout(5, 0));
+		invocationPanel.add(timeoutComboBox, BorderLayout.CENTER);
+		invocationPanel.add(cancelButton, BorderLayout.LINE_END);
+		controlPanel.add(invocationPanel, BorderLayout.LINE_END);
+		resultPanel.add(controlPanel, BorderLayout.PAGE_START);
 
 		// if the return type is not void, add table for displaying the
 		// invocation result
@@ -571,7 +628,24 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 			parameters[i] = ((ParameterItem) parametersTM.rowBinding.get(i)).value;
 
 		// invoke the method
-		OIInvoker.executeMethod(object, method, parameters, this);
+		timeoutComboBox.setEnabled(false);
+		cancelButton.setEnabled(true);
+		invocationResultHandled = false;
+		invocationTerminated = false;
+		runningInvocation = OIInvoker.executeMethod(object, method, parameters,
+				TIMEOUTS[timeoutComboBox.getSelectedIndex()], this);
+	}
+
+	/**
+	 * Cancels the running invocation of the method. The thread executing the
+	 * method is interrupted. The object remains locked until the method
+	 * returns.
+	 */
+	private void cancelMethod() {
+		if (runningInvocation != null) {
+			cancelButton.setEnabled(false);
+			runningInvocation.cancel(true);
+		}
 	}
 
 	/**
@@ -583,17 +657,37 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 	 *            the exception thrown by the method
 	 */
 	private void handleMethodInvocationResult(Object result, Exception thrownException) {
+		invocationResultHandled = true;
+		cancelButton.setEnabled(false);
+
 		// set result
 		if (thrownException != null)
 			outputTM.setResult(new UnknownValue());
 		else
 			outputTM.setResult(result);
 
-		executeButton.setBorder(null);
-		setExecutionLock(object, false);
+		// a cancelled method can still run, the object stays locked until the
+		// method returns
+		boolean stillRunning = !invocationTerminated;
+		boolean cancelled = (thrownException instanceof CancellationException)
+				|| (thrownException instanceof TimeoutException);
+		if (!stillRunning) {
+			finishInvocation();
+		} else if (cancelled) {
+			executeButton.setBorder(BorderFactory.createMatteBorder(1, 1, 1, 1, Color.orange));
+			executeButton.setToolTipText("The invocation was cancelled, but the method is still running.");
+		}
 
 		// show message if exception thrown
-		if (thrownException != null) {
+		if (thrownException instanceof CancellationException) {
+			// cancelled by the user, nothing to report
+		} else if (thrownException instanceof TimeoutException) {
+			String message = thrownException.getMessage();
+			if (stillRunning)
+				message += "\nThe method is still running, the object is locked until the method returns.";
+
+			JOptionPane.showMessageDialog(this, message, "Timeout", JOptionPane.WARNING_MESSAGE);
+		} else if (thrownException != null) {
 			String message = "";
 			if (thrownException instanceof InvocationTargetException)
 				message = thrownException.getCause().toString();
@@ -603,6 +697,32 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 			JOptionPane.showMessageDialog(this, "Thrown exception:\n" + message, "Exception",
 					JOptionPane.ERROR_MESSAGE);
 		}
+	}
+
+	/**
+	 * Handles termination of the method invocation, i.e., the invoked method
+	 * is no longer executed.
+	 */
+	private void handleMethodInvocationTermination() {
+		invocationTerminated = true;
+		if (invocationResultHandled)
+			finishInvocation();
+	}
+
+	/**
+	 * Releases the execution lock and enables GUI components after the
+	 * result of the invocation has been handled and the invocation has
+	 * terminated.
+	 */
+	private void finishInvocation() {
+		if (runningInvocation == null)
+			return;
+
+		runningInvocation = null;
+		timeoutComboBox.setEnabled(true);
+		executeButton.setBorder(null);
+		executeButton.setToolTipText(null);
+		setExecutionLock(object, false);
 
 		// enable GUI components
 		checkParameters();
@@ -621,6 +741,14 @@ class OIMethodInvocationFrame extends JFrame implements ResultHandler {
 		});
 	}
 
+	public void handleTermination() {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				handleMethodInvocationTermination();
+			}
+		});
+	}
+
 	// ---------------------------------------------------------------------------------------------------
 	// Serialization control
 	// ---------------------------------------------------------------------------------------------------
@@ -3,10 +3,10 @@ package sk.upjs.jpaz2.inspector;
 import java.awt.*;
 import java.awt.event.*;
 import java.beans.*;
-import java.lang.reflect.Method;
 import java.util.*;
 
 import javax.swing.*;
+import javax.swing.event.*;
 import javax.swing.table.*;
 
 import sk.upjs.jpaz2.JPAZUtilities;
@@ -42,11 +42,6 @@ public class OIPanel extends JPanel {
 		 */
 		PropertyDescriptor propertyDescriptor;
 
-		/**
-		 * Whether this property is supported by Object Inspector
-		 */
-		boolean isSupported = false;
-
 		/**
 		 * Indicates whether the property is read-only, i.e., there is no
 		 * available setter-method
@@ -82,11 +77,6 @@ public class OIPanel extends JPanel {
 		 */
 		MethodDescriptor methodDescriptor;
 
-		/**
-		 * Whether this property is supported by Object Inspector
-		 */
-		boolean isSupported = false;
-
 		/**
 		 * A frame created for invoking this method
 		 */
@@ -123,14 +113,21 @@ public class OIPanel extends JPanel {
 		String className;
 
 		/**
-		 * List of properties defined in this class
+		 * Introspected properties and methods of this class
 		 */
-		ArrayList<PropertyItem> properties = new ArrayList<PropertyItem>();
+		OIClassStructure.ClassInfo info;
 
 		/**
-		 * List of methods defined in this class
+		 * List of supported properties defined in this class. The list is
+		 * created when the properties are displayed for the first time.
 		 */
-		ArrayList<MethodItem> methods = new ArrayList<MethodItem>();
+		ArrayList<PropertyItem> properties = null;
+
+		/**
+		 * List of supported methods defined in this class. The list is created
+		 * when the methods are displayed for the first time.
+		 */
+		ArrayList<MethodItem> methods = null;
 
 		/**
 		 * Indicates whether information about properties defined in this class
@@ -157,11 +154,12 @@ public class OIPanel extends JPanel {
 		/**
 		 * Construct a data record.
 		 * 
-		 * @param objectClass
-		 *            the class represented by this data record
+		 * @param info
+		 *            the introspected class represented by this data record
 		 */
-		public ClassItem(Class<?> objectClass) {
-			cl = objectClass;
+		public ClassItem(OIClassStructure.ClassInfo info) {
+			this.info = info;
+			cl = info.cl;
 			className = cl.getSimpleName();
 			propertiesCollapsed = false;
 		}
@@ -316,6 +314,10 @@ public class OIPanel extends JPanel {
 				ClassItem ci = (ClassItem) rowObject;
 				ci.propertiesCollapsed = !ci.propertiesCollapsed;
 				updatePropertiesRowBinding();
+
+				// only displayed properties are updated
+				if (inspectedObject != null)
+					startPeriodicUpdate();
 			}
 		}
 	}
@@ -467,9 +469,14 @@ public class OIPanel extends JPanel {
 	private JTabbedPane tabbedPane;
 
 	/**
-	 * Thread responsible for periodical updates of current property values
+	 * Task responsible for periodical updates of current property values
 	 */
-	private PropertyUpdateThread propertyUpdateThread;
+	private PropertyUpdateTask propertyUpdateTask;
+
+	/**
+	 * Period in milliseconds in which property values are updated
+	 */
+	private long updatePeriod = PropertyUpdateTask.DEFAULT_UPDATE_PERIOD;
 
 	/**
 	 * Manager of supported class types
@@ -492,6 +499,19 @@ public class OIPanel extends JPanel {
 
 		setLayout(new GridLayout(1, 1));
 		this.add(tabbedPane);
+
+		// property values are frequently updated only if they are visible
+		addHierarchyListener(new HierarchyListener() {
+			public void hierarchyChanged(HierarchyEvent e) {
+				if ((e.getChangeFlags() & HierarchyEvent.SHOWING_CHANGED) != 0)
+					updateVisibility();
+			}
+		});
+		tabbedPane.addChangeListener(new ChangeListener() {
+			public void stateChanged(ChangeEvent e) {
+				updateVisibility();
+			}
+		});
 	}
 
 	// --------------------------------------------------------------------------------------------
@@ -528,6 +548,33 @@ public class OIPanel extends JPanel {
 		}
 	}
 
+	/**
+	 * Gets the period in which property values of the inspected object are
+	 * updated.
+	 * 
+	 * @return the update period in milliseconds.
+	 */
+	public long getUpdatePeriod() {
+		return updatePeriod;
+	}
+
+	/**
+	 * Sets the period in which property values of the inspected object are
+	 * updated. If property values do not change, they are updated less
+	 * frequently.
+	 * 
+	 * @param updatePeriod
+	 *            the update period in milliseconds.
+	 */
+	public void setUpdatePeriod(long updatePeriod) {
+		if (updatePeriod <= 0)
+			throw new RuntimeException("The update period must be a positive number.");
+
+		this.updatePeriod = updatePeriod;
+		if (propertyUpdateTask != null)
+			propertyUpdateTask.setUpdatePeriod(updatePeriod);
+	}
+
 	/**
 	 * Gets the currently inspected object.
 	 * 
@@ -605,11 +652,7 @@ public class OIPanel extends JPanel {
 		for (ClassItem ci : classes) {
 			propertiesTM.rowBinding.add(ci);
 			if (!ci.propertiesCollapsed) {
-				for (PropertyItem pi : ci.properties) {
-					if (pi.isSupported) {
-						propertiesTM.rowBinding.add(pi);
-					}
-				}
+				propertiesTM.rowBinding.addAll(getPropertyItems(ci));
 			}
 		}
 
@@ -628,11 +671,7 @@ public class OIPanel extends JPanel {
 		for (ClassItem ci : classes) {
 			methodsTM.rowBinding.add(ci);
 			if (!ci.methodsCollapsed) {
-				for (MethodItem mi : ci.methods) {
-					if (mi.isSupported) {
-						methodsTM.rowBinding.add(mi);
-					}
-				}
+				methodsTM.rowBinding.addAll(getMethodItems(ci));
 			}
 		}
 
@@ -650,8 +689,6 @@ public class OIPanel extends JPanel {
 	private void analyseInspectedObject() {
 		// read whole class structure
 		readClassStructure();
-		// filter unsupported items (properties and methods)
-		filterClassStructure();
 
 		// change binding
 		updatePropertiesRowBinding();
@@ -659,7 +696,9 @@ public class OIPanel extends JPanel {
 	}
 
 	/**
-	 * Constructs a basic structural information about the inspected object
+	 * Constructs a basic structural information about the inspected object.
+	 * Data records of properties and methods are created when they are
+	 * displayed for the first time.
 	 */
 	private void readClassStructure() {
 		// empty old list of classes
@@ -668,135 +707,22 @@ public class OIPanel extends JPanel {
 		if (inspectedObject == null)
 			return;
 
-		// read structure
-		Class<?> objectClass = inspectedObject.getClass();
-
-		// load bean info
-		BeanInfo bInfo = null;
-		try {
-			bInfo = Introspector.getBeanInfo(objectClass, inspectionStopClass);
-		} catch (Exception e) {
-			return;
-		}
-
-		// create inheritance list
-		while ((objectClass != null) && (objectClass != inspectionStopClass)) {
-			ClassItem ci = new ClassItem(objectClass);
-			// only the first class is initially expanded
-			ci.propertiesCollapsed = (classes.size() > 0);
-			ci.methodsCollapsed = (classes.size() > 0);
-
-			classes.add(ci);
-			objectClass = objectClass.getSuperclass();
-		}
-
-		// distribute properties to appropriate classes
-		PropertyDescriptor[] properties = bInfo.getPropertyDescriptors();
-		if (properties != null) {
-			for (PropertyDescriptor pd : properties) {
-				// process only such properties that provide at least reading
-				// capability
-				if (pd.getReadMethod() != null) {
-					// create and initialize a data record for the property
-					PropertyItem pi = new PropertyItem(pd.getDisplayName());
-					pi.propertyDescriptor = pd;
-					pi.isReadOnly = (pd.getWriteMethod() == null);
-
-					// add the property record to the proper class record
-					Class<?> declaringClass = pd.getReadMethod().getDeclaringClass();
-					for (ClassItem ci : classes) {
-						if (ci.cl.equals(declaringClass)) {
-							ci.properties.add(pi);
-							break;
-						}
-					}
-				}
-			}
-		}
-
-		// distribute methods to appropriate classes
-		MethodDescriptor[] methods = bInfo.getMethodDescriptors();
-		if (methods != null) {
-			for (MethodDescriptor md : methods) {
-				// create and initialize a data record for the method
-				MethodItem mi = new MethodItem(md.getDisplayName());
-				mi.methodDescriptor = md;
-
-				// add the method record to the proper class record
-				Class<?> declaringClass = md.getMethod().getDeclaringClass();
-				for (ClassItem ci : classes) {
-					if (ci.cl.equals(declaringClass)) {
-						ci.methods.add(mi);
-						break;
-					}
-				}
-			}
-		}
-
-		// order properties and methods of each class in alphabetical order
-		for (ClassItem ci : classes) {
-			Collections.sort(ci.properties, new Comparator<PropertyItem>() {
-				public int compare(PropertyItem o1, PropertyItem o2) {
-					return o1.name.compareTo(o2.name);
-				}
-			});
+		// read cached structure
+		OIClassStructure structure = OIClassStructure.get(inspectedObject.getClass(), inspectionStopClass);
 
-			Collections.sort(ci.methods, new Comparator<MethodItem>() {
-				public int compare(MethodItem o1, MethodItem o2) {
-					return o1.name.compareTo(o2.name);
-				}
-			});
-		}
-	}
-
-	/**
-	 * Decides for each item (method or property) whether it is supported by the
-	 * object inspector.
-	 */
-	private void filterClassStructure() {
 		int propertiesActiveClasses = 0;
 		int methodsActiveClasses = 0;
+		for (OIClassStructure.ClassInfo info : structure.getClasses()) {
+			ClassItem ci = new ClassItem(info);
 
-		for (ClassItem ci : classes) {
-			// check properties - the property is supported if it is not an
-			// indexed property
-			// and there is a support for reading (displaying) the property
-			// value
-			for (PropertyItem pi : ci.properties) {
-				pi.isSupported = (!(pi.propertyDescriptor instanceof IndexedPropertyDescriptor))
-						&& (classSupporter.isReadSupported(pi.propertyDescriptor.getPropertyType()));
-
-				if (pi.isSupported) {
+			// count supported items (properties and methods)
+			for (PropertyDescriptor pd : info.properties)
+				if (isSupportedProperty(pd))
 					ci.supportedPropertiesCount++;
-				}
-			}
-
-			// check methods
-			for (MethodItem mi : ci.methods) {
-				// checked whether all parameters are editable
-				boolean allParametersOK = true;
-				Class<?>[] parameterTypes = mi.methodDescriptor.getMethod().getParameterTypes();
-				if (parameterTypes != null) {
-					for (Class<?> parameterType : parameterTypes) {
-						if (!classSupporter.isWriteSupported(parameterType)) {
-							allParametersOK = false;
-						}
-					}
-				}
-
-				// check whether the result of the method can be displayed or is
-				// void
-				Class<?> returnType = mi.methodDescriptor.getMethod().getReturnType();
-				boolean resultOK = (Void.class.equals(returnType) || void.class.equals(returnType)
-						|| classSupporter.isReadSupported(returnType));
 
-				// decide about the support
-				mi.isSupported = allParametersOK && resultOK && isVisibleMethod(mi.methodDescriptor.getMethod());
-
-				if (mi.isSupported) {
+			for (MethodDescriptor md : info.methods)
+				if (isSupportedMethod(md))
 					ci.supportedMethodsCount++;
-				}
-			}
 
 			// set expanded/collapsed in such a way that only the first active
 			// class is expanded
@@ -812,37 +738,99 @@ public class OIPanel extends JPanel {
 				ci.methodsCollapsed = (methodsActiveClasses > 0);
 				methodsActiveClasses++;
 			}
+
+			classes.add(ci);
 		}
 	}
 
 	/**
-	 * Returns whether method is visible in the object inspector.
+	 * Returns data records of supported properties defined in a class. The
+	 * records are created when they are requested for the first time.
 	 * 
-	 * @param method
-	 *            the method.
-	 * @return true, if the method is visible, false otherwise.
-	 */
-	private boolean isVisibleMethod(Method method) {
-		// hide wait methods of the Object
-		if (Object.class.equals(method.getDeclaringClass())) {
-			if ("wait".equals(method.getName())) {
-				return false;
+	 * @param ci
+	 *            the class record
+	 * @return the list of property records
+	 */
+	private java.util.List<PropertyItem> getPropertyItems(ClassItem ci) {
+		if (ci.properties == null) {
+			ci.properties = new ArrayList<PropertyItem>();
+			for (PropertyDescriptor pd : ci.info.properties) {
+				if (isSupportedProperty(pd)) {
+					// create and initialize a data record for the property
+					PropertyItem pi = new PropertyItem(pd.getDisplayName());
+					pi.propertyDescriptor = pd;
+					pi.isReadOnly = (pd.getWriteMethod() == null);
+					pi.value = new UnknownValue();
+					ci.properties.add(pi);
+				}
 			}
-			
-			if ("notify".equals(method.getName())) {
-				return false;
+		}
+
+		return ci.properties;
+	}
+
+	/**
+	 * Returns data records of supported methods defined in a class. The
+	 * records are created when they are requested for the first time.
+	 * 
+	 * @param ci
+	 *            the class record
+	 * @return the list of method records
+	 */
+	private java.util.List<MethodItem> getMethodItems(ClassItem ci) {
+		if (ci.methods == null) {
+			ci.methods = new ArrayList<MethodItem>();
+			for (MethodDescriptor md : ci.info.methods) {
+				if (isSupportedMethod(md)) {
+					// create and initialize a data record for the method
+					MethodItem mi = new MethodItem(md.getDisplayName());
+					mi.methodDescriptor = md;
+					ci.methods.add(mi);
+				}
 			}
-			
-			if ("notifyAll".equals(method.getName())) {
-				return false;
+		}
+
+		return ci.methods;
+	}
+
+	/**
+	 * Returns whether a property is supported by the object inspector, i.e.,
+	 * whether there is a support for reading (displaying) the property value.
+	 * 
+	 * @param pd
+	 *            the property descriptor
+	 */
+	private boolean isSupportedProperty(PropertyDescriptor pd) {
+		return classSupporter.isReadSupported(pd.getPropertyType());
+	}
+
+	/**
+	 * Returns whether a method is supported by the object inspector, i.e.,
+	 * whether all parameters are editable and the result can be displayed.
+	 * 
+	 * @param md
+	 *            the method descriptor
+	 */
+	private boolean isSupportedMethod(MethodDescriptor md) {
+		// checked whether all parameters are editable
+		Class<?>[] parameterTypes = md.getMethod().getParameterTypes();
+		if (parameterTypes != null) {
+			for (Class<?> parameterType : parameterTypes) {
+				if (!classSupporter.isWriteSupported(parameterType)) {
+					return false;
+				}
 			}
 		}
 
-		return true;
+		// check whether the result of the method can be displayed or is
+		// void
+		Class<?> returnType = md.getMethod().getReturnType();
+		return (Void.class.equals(returnType) || void.class.equals(returnType)
+				|| classSupporter.isReadSupported(returnType));
 	}
 
 	// --------------------------------------------------------------------------------------------
-	// Management of the thread updating current values of properties of the
+	// Management of the task updating current values of properties of the
 	// inspected object
 	// --------------------------------------------------------------------------------------------
 
@@ -852,44 +840,63 @@ public class OIPanel extends JPanel {
 	private void startPeriodicUpdate() {
 		stopPeriodicUpdate();
 
-		// list properties that will be updated - only supported properties are
+		// list properties that will be updated - only displayed properties are
 		// updated
 		ArrayList<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
 		for (ClassItem ci : classes) {
-			for (PropertyItem pi : ci.properties) {
-				if (pi.isSupported) {
+			if (!ci.propertiesCollapsed) {
+				for (PropertyItem pi : getPropertyItems(ci)) {
 					properties.add(pi.propertyDescriptor);
 				}
 			}
 		}
 
-		// creates the update thread
-		propertyUpdateThread = new PropertyUpdateThread(inspectedObject, properties) {
+		// creates the update task
+		propertyUpdateTask = new PropertyUpdateTask(inspectedObject, properties) {
 			@Override
 			public void updateValuesInSwing(Map<PropertyDescriptor, Object> values) {
-				// move current values from thread to OIPanel
+				// ignore values from a stopped task
+				if (propertyUpdateTask != this)
+					return;
+
+				// move changed values from task to OIPanel and repaint
+				// only cells with changed values
 				// this method is always invoked in EDT, i.e., no
 				// synchronization is necessary
-				for (ClassItem ci : classes)
-					for (PropertyItem pi : ci.properties)
-						if (values.containsKey(pi.propertyDescriptor))
+				for (int row = 0; row < propertiesTM.rowBinding.size(); row++) {
+					Object rowObject = propertiesTM.rowBinding.get(row);
+					if (rowObject instanceof PropertyItem) {
+						PropertyItem pi = (PropertyItem) rowObject;
+						if (values.containsKey(pi.propertyDescriptor)) {
 							pi.value = values.get(pi.propertyDescriptor);
-
-				propertiesTM.fireTableDataChanged();
+							propertiesTM.fireTableCellUpdated(row, 1);
+						}
+					}
+				}
 			}
 		};
 
-		// start the thread
-		propertyUpdateThread.start();
+		// start the task
+		propertyUpdateTask.setUpdatePeriod(updatePeriod);
+		updateVisibility();
+		propertyUpdateTask.start();
 	}
 
 	/**
 	 * Stops periodic update
 	 */
 	private void stopPeriodicUpdate() {
-		if (propertyUpdateThread != null) {
-			propertyUpdateThread.interrupt();
-			propertyUpdateThread = null;
+		if (propertyUpdateTask != null) {
+			propertyUpdateTask.stop();
+			propertyUpdateTask = null;
 		}
 	}
+
+	/**
+	 * Notifies the update task whether property values are visible.
+	 */
+	private void updateVisibility() {
+		if (propertyUpdateTask != null)
+			propertyUpdateTask.setVisible(isShowing() && (tabbedPane.getSelectedIndex() == 0));
+	}
 }
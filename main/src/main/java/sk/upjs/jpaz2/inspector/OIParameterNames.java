@@ -0,0 +1,210 @@
+package sk.upjs.jpaz2.inspector;
+
+import java.io.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import com.thoughtworks.paranamer.*;
+
+/**
+ * The class providing names of method parameters. Names are read from the
+ * index created by {@link ParameterNamesProcessor} during compilation of the
+ * library. If the index of a class is not available (e.g., for classes using
+ * the library), names are read using reflection (if the class was compiled
+ * with the -parameters option on Java 8+) and finally by Paranamer that parses
+ * bytecode of the class.
+ */
+final class OIParameterNames {
+
+	/**
+	 * Indices of parameter names of top-level classes. An index maps method
+	 * keys to parameter names, an empty index indicates that the index of the
+	 * class is not available.
+	 */
+	private static final ClassValue<Map<String, String[]>> indices = new ClassValue<Map<String, String[]>>() {
+		@Override
+		protected Map<String, String[]> computeValue(Class<?> type) {
+			return loadIndex(type);
+		}
+	};
+
+	/**
+	 * Method Method.getParameters available on Java 8+.
+	 */
+	private static final Method getParametersMethod;
+
+	/**
+	 * Method Parameter.isNamePresent available on Java 8+.
+	 */
+	private static final Method isNamePresentMethod;
+
+	/**
+	 * Method Parameter.getName available on Java 8+.
+	 */
+	private static final Method getNameMethod;
+
+	static {
+		Method getParameters = null;
+		Method isNamePresent = null;
+		Method getName = null;
+		try {
+			getParameters = Method.class.getMethod("getParameters");
+			Class<?> parameterClass = getParameters.getReturnType().getComponentType();
+			isNamePresent = parameterClass.getMethod("isNamePresent");
+			getName = parameterClass.getMethod("getName");
+		} catch (Exception e) {
+			getParameters = null;
+		}
+
+		getParametersMethod = getParameters;
+		isNamePresentMethod = isNamePresent;
+		getNameMethod = getName;
+	}
+
+	/**
+	 * Shared instance of Paranamer that reads parameter names from bytecode
+	 */
+	private static Paranamer paranamer;
+
+	/**
+	 * Private constructor preventing creation of instances.
+	 */
+	private OIParameterNames() {
+
+	}
+
+	/**
+	 * Returns names of parameters of a method.
+	 *
+	 * @param method
+	 *            the method
+	 * @return the parameter names or null, if names are not available
+	 */
+	public static String[] lookup(Method method) {
+		if (method.getParameterTypes().length == 0)
+			return null;
+
+		String[] names = lookupInIndex(method);
+		if (names == null)
+			names = lookupByReflection(method);
+		if (names == null)
+			names = lookupByParanamer(method);
+
+		return names;
+	}
+
+	/**
+	 * Returns parameter names of a method stored in the index of its class.
+	 */
+	private static String[] lookupInIndex(Method method) {
+		Class<?> type = method.getDeclaringClass();
+		Class<?> topLevelType = type;
+		while (topLevelType.getEnclosingClass() != null)
+			topLevelType = topLevelType.getEnclosingClass();
+
+		Map<String, String[]> index = indices.get(topLevelType);
+		if (index.isEmpty())
+			return null;
+
+		StringBuilder key = new StringBuilder();
+		key.append(type.getName()).append(' ').append(method.getName()).append('(');
+		Class<?>[] parameterTypes = method.getParameterTypes();
+		for (int i = 0; i < parameterTypes.length; i++) {
+			if (i > 0)
+				key.append(',');
+			key.append(getTypeName(parameterTypes[i]));
+		}
+		key.append(')');
+
+		String[] names = index.get(key.toString());
+		return (names == null) ? null : names.clone();
+	}
+
+	/**
+	 * Returns parameter names of a method available by reflection (Java 8+).
+	 */
+	private static String[] lookupByReflection(Method method) {
+		if (getParametersMethod == null)
+			return null;
+
+		try {
+			Object[] parameters = (Object[]) getParametersMethod.invoke(method);
+			String[] names = new String[parameters.length];
+			for (int i = 0; i < parameters.length; i++) {
+				if (!(Boolean) isNamePresentMethod.invoke(parameters[i]))
+					return null;
+
+				names[i] = (String) getNameMethod.invoke(parameters[i]);
+			}
+
+			return names;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns parameter names of a method read by Paranamer.
+	 */
+	private static synchronized String[] lookupByParanamer(Method method) {
+		if (paranamer == null)
+			paranamer = new CachingParanamer(new AdaptiveParanamer());
+
+		String[] names = paranamer.lookupParameterNames(method, false);
+		if ((names == null) || (names.length == 0))
+			return null;
+
+		return names;
+	}
+
+	/**
+	 * Loads the index of parameter names of a top-level class.
+	 *
+	 * @param type
+	 *            the top-level class
+	 * @return the map from method keys to parameter names
+	 */
+	private static Map<String, String[]> loadIndex(Class<?> type) {
+		ClassLoader classLoader = type.getClassLoader();
+		if (classLoader == null)
+			return Collections.emptyMap();
+
+		InputStream input = classLoader.getResourceAsStream(ParameterNamesProcessor.INDEX_PATH + type.getName());
+		if (input == null)
+			return Collections.emptyMap();
+
+		Map<String, String[]> index = new HashMap<String, String[]>();
+		try {
+			BufferedReader reader = new BufferedReader(new InputStreamReader(input, "UTF-8"));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					// line format: declaring class, method signature and names
+					// of parameters separated by spaces
+					String[] parts = line.split(" ");
+					if (parts.length < 3)
+						continue;
+
+					index.put(parts[0] + " " + parts[1], Arrays.copyOfRange(parts, 2, parts.length));
+				}
+			} finally {
+				reader.close();
+			}
+		} catch (IOException e) {
+			System.err.println("Reading index of parameter names for " + type.getName() + " failed: " + e);
+			return Collections.emptyMap();
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the name of a type in the format used by the index.
+	 */
+	private static String getTypeName(Class<?> type) {
+		if (type.isArray())
+			return getTypeName(type.getComponentType()) + "[]";
+
+		return type.getName();
+	}
+}
@@ -0,0 +1,138 @@
+package sk.upjs.jpaz2.inspector;
+
+import java.io.*;
+import java.util.*;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.*;
+import javax.tools.*;
+
+/**
+ * Annotation processor that creates an index of parameter names of public
+ * methods and constructors. The object inspector reads parameter names from
+ * the index instead of parsing bytecode of classes. The processor is
+ * executed only when the JPAZ library is built (it is configured explicitly
+ * in the build). It is not registered as a service, so that compilation of
+ * classes using the library is not affected.
+ *
+ * For each compiled top-level class, the processor creates the resource
+ * META-INF/jpaz2/parameters/&lt;binary class name&gt; containing a line per
+ * method of the class and its nested classes. Each line consists of the
+ * binary name of the declaring class, the method signature and the
+ * parameter names, e.g.:
+ *
+ * <pre>
+ * sk.upjs.jpaz2.Turtle moveTo(double,double) x y
+ * </pre>
+ */
+@SupportedAnnotationTypes("*")
+public final class ParameterNamesProcessor extends AbstractProcessor {
+
+	/**
+	 * Path of the directory with parameter name indices.
+	 */
+	static final String INDEX_PATH = "META-INF/jpaz2/parameters/";
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		for (Element element : roundEnv.getRootElements()) {
+			if (!(element instanceof TypeElement))
+				continue;
+
+			TypeElement type = (TypeElement) element;
+			StringBuilder index = new StringBuilder();
+			appendTypeIndex(type, index);
+			if (index.length() == 0)
+				continue;
+
+			String binaryName = processingEnv.getElementUtils().getBinaryName(type).toString();
+			try {
+				FileObject resource = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "",
+						INDEX_PATH + binaryName, type);
+				Writer writer = new OutputStreamWriter(resource.openOutputStream(), "UTF-8");
+				try {
+					writer.write(index.toString());
+				} finally {
+					writer.close();
+				}
+			} catch (IOException e) {
+				processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+						"Index of parameter names for " + binaryName + " cannot be created: " + e);
+			}
+		}
+
+		// annotations are not claimed, so that other processors can process
+		// them
+		return false;
+	}
+
+	/**
+	 * Appends index lines of public methods and constructors of a type and its
+	 * nested types.
+	 *
+	 * @param type
+	 *            the type
+	 * @param index
+	 *            the builder where index lines are appended
+	 */
+	private void appendTypeIndex(TypeElement type, StringBuilder index) {
+		Elements elements = processingEnv.getElementUtils();
+		String typeName = elements.getBinaryName(type).toString();
+		for (Element member : type.getEnclosedElements()) {
+			if (member instanceof TypeElement) {
+				appendTypeIndex((TypeElement) member, index);
+				continue;
+			}
+
+			if (!(member instanceof ExecutableElement) || !member.getModifiers().contains(Modifier.PUBLIC))
+				continue;
+
+			ExecutableElement method = (ExecutableElement) member;
+			List<? extends VariableElement> parameters = method.getParameters();
+			if (parameters.isEmpty())
+				continue;
+
+			index.append(typeName).append(' ').append(method.getSimpleName()).append('(');
+			for (int i = 0; i < parameters.size(); i++) {
+				if (i > 0)
+					index.append(',');
+				index.append(getTypeName(parameters.get(i).asType()));
+			}
+			index.append(')');
+
+			for (VariableElement parameter : parameters)
+				index.append(' ').append(parameter.getSimpleName());
+
+			index.append('\n');
+		}
+	}
+
+	/**
+	 * Returns the name of erasure of a type in the format used by the index.
+	 *
+	 * @param type
+	 *            the type
+	 * @return the name of the type
+	 */
+	private String getTypeName(TypeMirror type) {
+		Types types = processingEnv.getTypeUtils();
+		TypeMirror erasure = types.erasure(type);
+		if (erasure.getKind() == TypeKind.ARRAY)
+			return getTypeName(((ArrayType) erasure).getComponentType()) + "[]";
+
+		if (erasure.getKind() == TypeKind.DECLARED) {
+			TypeElement element = (TypeElement) ((DeclaredType) erasure).asElement();
+			return processingEnv.getElementUtils().getBinaryName(element).toString();
+		}
+
+		return erasure.toString();
+	}
+}
@@ -0,0 +1,349 @@
+package sk.upjs.jpaz2.inspector;
+
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler executing property update tasks one by one. The next task to be
+ * executed is the task with the earliest update time. The CPU time spent by
+ * reading property values is limited by a CPU budget: after an update, the
+ * scheduler idles proportionally to the CPU time consumed by the update. Time
+ * spent by a blocked read method is not counted. Values are read in reader
+ * threads: if reading of a task does not complete within a time limit, the
+ * scheduler leaves the task in its reader thread and continues with other
+ * tasks. Such task is scheduled again after its read completes.
+ */
+final class PropertyUpdateScheduler {
+
+	/**
+	 * Maximal fraction of time of a single CPU spent by reading property
+	 * values.
+	 */
+	private static final double CPU_BUDGET = 0.1;
+
+	/**
+	 * Time limit in milliseconds for reading values of a task. After the
+	 * limit, the scheduler does not wait for the task.
+	 */
+	private static final long READ_TIME_LIMIT = 250;
+
+	/**
+	 * Time in seconds after which idle reader threads are terminated.
+	 */
+	private static final long READER_KEEP_ALIVE = 30;
+
+	/**
+	 * Internal synchronization lock guarding scheduling of tasks.
+	 */
+	static final Object lock = new Object();
+
+	/**
+	 * Scheduled tasks ordered by their update times.
+	 */
+	private static final PriorityQueue<PropertyUpdateTask> tasks = new PriorityQueue<PropertyUpdateTask>(11,
+			new Comparator<PropertyUpdateTask>() {
+				public int compare(PropertyUpdateTask t1, PropertyUpdateTask t2) {
+					return Long.compare(t1.nextUpdateTime, t2.nextUpdateTime);
+				}
+			});
+
+	/**
+	 * Thread executing the tasks or null, if there is no running thread.
+	 */
+	private static Thread updateThread;
+
+	/**
+	 * Time (in milliseconds) before which no task can be executed due to the
+	 * CPU budget.
+	 */
+	private static long budgetReleaseTime;
+
+	/**
+	 * Executor providing reader threads. A new thread is created whenever all
+	 * threads are busy, i.e., blocked in read methods.
+	 */
+	private static final ThreadPoolExecutor readers;
+
+	/**
+	 * Bean providing CPU time of threads.
+	 */
+	private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Indicates whether CPU time of the current thread can be measured.
+	 */
+	private static final boolean cpuTimeSupported;
+
+	static {
+		final AtomicInteger readerCounter = new AtomicInteger();
+		readers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, READER_KEEP_ALIVE, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JPAZ inspector reader " + readerCounter.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+
+		boolean supported = false;
+		try {
+			supported = threadBean.isCurrentThreadCpuTimeSupported() && threadBean.isThreadCpuTimeEnabled();
+		} catch (Exception e) {
+			supported = false;
+		}
+		cpuTimeSupported = supported;
+	}
+
+	/**
+	 * Reading of values of a task executed in a reader thread.
+	 */
+	private static final class Read implements Runnable {
+
+		/**
+		 * The task whose values are read.
+		 */
+		final PropertyUpdateTask task;
+
+		/**
+		 * Indicates whether some values have changed.
+		 */
+		boolean changed;
+
+		/**
+		 * CPU time (in nanoseconds) consumed by reading.
+		 */
+		long cpuTime;
+
+		/**
+		 * Indicates whether reading is completed.
+		 */
+		boolean completed;
+
+		/**
+		 * Indicates whether the scheduler stopped waiting for completion of
+		 * reading.
+		 */
+		boolean abandoned;
+
+		/**
+		 * Constructs reading of values of a task.
+		 */
+		Read(PropertyUpdateTask task) {
+			this.task = task;
+		}
+
+		public void run() {
+			long startTime = currentThreadCpuTime();
+			boolean changed = false;
+			try {
+				changed = task.update();
+			} catch (Exception e) {
+				System.err.println("Update of inspected values failed: " + e);
+			}
+			long cpuTime = currentThreadCpuTime() - startTime;
+
+			synchronized (lock) {
+				this.changed = changed;
+				this.cpuTime = cpuTime;
+				this.completed = true;
+				if (abandoned)
+					completeRead(this);
+
+				lock.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Private constructor preventing creation of instances.
+	 */
+	private PropertyUpdateScheduler() {
+
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Task management
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Schedules a task for immediate execution.
+	 *
+	 * @param task
+	 *            the task
+	 */
+	static void schedule(PropertyUpdateTask task) {
+		synchronized (lock) {
+			if (task.isStopped())
+				return;
+
+			tasks.remove(task);
+			task.nextUpdateTime = System.currentTimeMillis();
+			tasks.add(task);
+			ensureThread();
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Recomputes update time of a scheduled task.
+	 *
+	 * @param task
+	 *            the task
+	 * @param urgent
+	 *            true, if the values should be read as soon as possible
+	 */
+	static void reschedule(PropertyUpdateTask task, boolean urgent) {
+		synchronized (lock) {
+			if (task.isStopped())
+				return;
+
+			// a task that is not in the queue is running, it is rescheduled
+			// when the execution is completed
+			if (!tasks.remove(task)) {
+				task.urgentUpdate |= urgent;
+				return;
+			}
+
+			long nextUpdateTime = task.computeNextUpdateTime(System.currentTimeMillis(), urgent);
+			if (urgent)
+				nextUpdateTime = Math.min(nextUpdateTime, task.nextUpdateTime);
+
+			task.nextUpdateTime = nextUpdateTime;
+			tasks.add(task);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Removes a task from the scheduler.
+	 *
+	 * @param task
+	 *            the task
+	 */
+	static void cancel(PropertyUpdateTask task) {
+		synchronized (lock) {
+			tasks.remove(task);
+			lock.notifyAll();
+		}
+	}
+
+	/**
+	 * Starts the thread executing the tasks if it is not running.
+	 */
+	private static void ensureThread() {
+		if (updateThread != null)
+			return;
+
+		updateThread = new Thread(new Runnable() {
+			public void run() {
+				executeTasks();
+			}
+		}, "JPAZ inspector updater");
+		updateThread.setDaemon(true);
+		updateThread.start();
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Task execution
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns CPU time of the current thread in nanoseconds. If CPU time
+	 * cannot be measured, the elapsed time is returned.
+	 */
+	private static long currentThreadCpuTime() {
+		if (cpuTimeSupported) {
+			long cpuTime = threadBean.getCurrentThreadCpuTime();
+			if (cpuTime >= 0)
+				return cpuTime;
+		}
+
+		return System.nanoTime();
+	}
+
+	/**
+	 * Executes scheduled tasks. The method returns when there is no scheduled
+	 * task.
+	 */
+	private static void executeTasks() {
+		while (true) {
+			// wait for a task
+			PropertyUpdateTask task;
+			synchronized (lock) {
+				while (true) {
+					if (tasks.isEmpty()) {
+						updateThread = null;
+						return;
+					}
+
+					long now = System.currentTimeMillis();
+					long startTime = Math.max(tasks.peek().nextUpdateTime, budgetReleaseTime);
+					if (startTime <= now)
+						break;
+
+					try {
+						lock.wait(startTime - now);
+					} catch (InterruptedException ignore) {
+						// nothing to do
+					}
+				}
+
+				task = tasks.poll();
+			}
+
+			// read values in a reader thread
+			Read read = new Read(task);
+			try {
+				readers.execute(read);
+			} catch (RejectedExecutionException e) {
+				read.run();
+			}
+
+			// wait for completion of reading limited by the time limit
+			synchronized (lock) {
+				long deadline = System.currentTimeMillis() + READ_TIME_LIMIT;
+				while (!read.completed) {
+					long remaining = deadline - System.currentTimeMillis();
+					if (remaining <= 0)
+						break;
+
+					try {
+						lock.wait(remaining);
+					} catch (InterruptedException ignore) {
+						// nothing to do
+					}
+				}
+
+				// a blocked task is scheduled again after its read completes
+				if (read.completed)
+					completeRead(read);
+				else
+					read.abandoned = true;
+			}
+		}
+	}
+
+	/**
+	 * Updates the CPU budget and schedules the next update of the task after
+	 * its values have been read. The method is called while holding the lock.
+	 *
+	 * @param read
+	 *            the completed reading
+	 */
+	private static void completeRead(Read read) {
+		PropertyUpdateTask task = read.task;
+		long now = System.currentTimeMillis();
+		long idleTime = (long) (read.cpuTime * (1 - CPU_BUDGET) / CPU_BUDGET / 1000000);
+		budgetReleaseTime = Math.max(budgetReleaseTime, now + idleTime);
+		if (!task.isStopped()) {
+			task.updateCompleted(now, read.changed);
+			task.nextUpdateTime = task.computeNextUpdateTime(now, task.urgentUpdate);
+			task.urgentUpdate = false;
+			tasks.add(task);
+			ensureThread();
+			lock.notifyAll();
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package sk.upjs.jpaz2.inspector;
+
+import java.beans.*;
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.util.*;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.*;
+
+import sk.upjs.jpaz2.Pane;
+import sk.upjs.jpaz2.Turtle;
+
+/**
+ * Task updating the current property values of an inspected object. Tasks
+ * are executed by {@link PropertyUpdateScheduler}. The values are read
+ * periodically with an adaptive period: if values of the object do not
+ * change, the period is prolonged up to a multiple of the update period. If
+ * the object notifies about its changes (panes and turtles), the values are
+ * read after a change notification (at most once per update period). Values
+ * of objects that are not visible are read rarely. Only values that differ
+ * from previously read values are passed to Swing.
+ */
+class PropertyUpdateTask {
+
+	/**
+	 * Default update period in milliseconds.
+	 */
+	static final long DEFAULT_UPDATE_PERIOD = 200;
+
+	/**
+	 * Maximal factor by which the update period is prolonged when values do
+	 * not change.
+	 */
+	private static final int MAX_BACKOFF_FACTOR = 8;
+
+	/**
+	 * Minimal period in milliseconds in which values of objects that are not
+	 * visible are read.
+	 */
+	private static final long HIDDEN_UPDATE_PERIOD = 2000;
+
+	/**
+	 * Type of method handles reading property values.
+	 */
+	private static final MethodType READER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+	/**
+	 * Refresh period in milliseconds
+	 */
+	private long updatePeriod = DEFAULT_UPDATE_PERIOD;
+
+	/**
+	 * Current (adaptive) period in milliseconds
+	 */
+	private long currentPeriod = DEFAULT_UPDATE_PERIOD;
+
+	/**
+	 * Indicates whether the inspected object is visible.
+	 */
+	private boolean visible = true;
+
+	/**
+	 * Time (in milliseconds) when the values were read last time.
+	 */
+	private long lastUpdateTime;
+
+	/**
+	 * Time (in milliseconds) when the values should be read. The time is
+	 * managed by the scheduler.
+	 */
+	long nextUpdateTime;
+
+	/**
+	 * Indicates whether an urgent update was requested while the values were
+	 * read. The flag is managed by the scheduler.
+	 */
+	boolean urgentUpdate;
+
+	/**
+	 * Indicates whether the task has been stopped.
+	 */
+	private volatile boolean stopped = false;
+
+	/**
+	 * List of properties that should be updated
+	 */
+	private final PropertyDescriptor[] properties;
+
+	/**
+	 * Method handles reading values of properties. A null handle indicates
+	 * that the read method is not accessible.
+	 */
+	private final MethodHandle[] readers;
+
+	/**
+	 * Last read values of properties.
+	 */
+	private final Object[] values;
+
+	/**
+	 * The object whose properties are read
+	 */
+	private final Object object;
+
+	/**
+	 * Listener receiving change notifications from the object.
+	 */
+	private final ChangeListener changeListener = new ChangeListener() {
+		public void stateChanged(ChangeEvent e) {
+			PropertyUpdateScheduler.reschedule(PropertyUpdateTask.this, true);
+		}
+	};
+
+	/**
+	 * Constructs the task updating (reading) property values of an object.
+	 *
+	 * @param object
+	 *            the object whose property values are read
+	 * @param properties
+	 *            the list of properties that are updated
+	 */
+	public PropertyUpdateTask(Object object, List<PropertyDescriptor> properties) {
+		this.object = object;
+		this.properties = properties.toArray(new PropertyDescriptor[properties.size()]);
+		this.readers = new MethodHandle[this.properties.length];
+		this.values = new Object[this.properties.length];
+
+		// prepare method handles and initial values
+		for (int i = 0; i < this.properties.length; i++) {
+			values[i] = new UnknownValue();
+			Method readMethod = this.properties[i].getReadMethod();
+			if (readMethod != null) {
+				try {
+					readers[i] = MethodHandles.publicLookup().unreflect(readMethod).asType(READER_TYPE);
+				} catch (Exception e) {
+					readers[i] = null;
+				}
+			}
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Task control
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Starts periodic updates of property values.
+	 */
+	public void start() {
+		if (object instanceof Pane)
+			((Pane) object).addChangeListener(changeListener);
+		else if (object instanceof Turtle)
+			((Turtle) object).addChangeListener(changeListener);
+
+		PropertyUpdateScheduler.schedule(this);
+	}
+
+	/**
+	 * Stops periodic updates of property values. Changed values that have not
+	 * been passed to Swing yet are discarded.
+	 */
+	public void stop() {
+		stopped = true;
+		if (object instanceof Pane)
+			((Pane) object).removeChangeListener(changeListener);
+		else if (object instanceof Turtle)
+			((Turtle) object).removeChangeListener(changeListener);
+
+		PropertyUpdateScheduler.cancel(this);
+	}
+
+	/**
+	 * Returns whether the task has been stopped.
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Gets the update period in milliseconds.
+	 */
+	public long getUpdatePeriod() {
+		synchronized (PropertyUpdateScheduler.lock) {
+			return updatePeriod;
+		}
+	}
+
+	/**
+	 * Sets the update period.
+	 *
+	 * @param updatePeriod
+	 *            the update period in milliseconds
+	 */
+	public void setUpdatePeriod(long updatePeriod) {
+		if (updatePeriod <= 0)
+			throw new RuntimeException("The update period must be a positive number.");
+
+		synchronized (PropertyUpdateScheduler.lock) {
+			this.updatePeriod = updatePeriod;
+			this.currentPeriod = updatePeriod;
+		}
+
+		PropertyUpdateScheduler.reschedule(this, false);
+	}
+
+	/**
+	 * Sets whether the inspected object is visible. Values of objects that are
+	 * not visible are read rarely.
+	 *
+	 * @param visible
+	 *            true, if the object is visible, false otherwise
+	 */
+	public void setVisible(boolean visible) {
+		synchronized (PropertyUpdateScheduler.lock) {
+			if (this.visible == visible)
+				return;
+
+			this.visible = visible;
+			this.currentPeriod = updatePeriod;
+		}
+
+		PropertyUpdateScheduler.reschedule(this, visible);
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Scheduling (called by the scheduler while holding its lock)
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Computes the time of the next update.
+	 *
+	 * @param now
+	 *            the current time in milliseconds
+	 * @param urgent
+	 *            true, if the values should be read as soon as possible
+	 *            (respecting the update period)
+	 * @return the time of the next update in milliseconds
+	 */
+	long computeNextUpdateTime(long now, boolean urgent) {
+		long period = urgent ? updatePeriod : currentPeriod;
+		if (!visible)
+			period = Math.max(period, HIDDEN_UPDATE_PERIOD);
+
+		return Math.max(now, lastUpdateTime + period);
+	}
+
+	/**
+	 * Adapts the update period after an update.
+	 *
+	 * @param now
+	 *            the time of the update in milliseconds
+	 * @param changed
+	 *            true, if some values have changed
+	 */
+	void updateCompleted(long now, boolean changed) {
+		lastUpdateTime = now;
+		if (changed)
+			currentPeriod = updatePeriod;
+		else
+			currentPeriod = Math.min(currentPeriod * 2, updatePeriod * MAX_BACKOFF_FACTOR);
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Reading values (called in the thread of the scheduler)
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Reads current values of properties and passes changed values to Swing.
+	 *
+	 * @return true, if some values have changed, false otherwise.
+	 */
+	boolean update() {
+		Map<PropertyDescriptor, Object> changedValues = new HashMap<PropertyDescriptor, Object>();
+		for (int i = 0; i < properties.length; i++) {
+			if (readers[i] != null) {
+				Object value;
+				try {
+					// invoke read method
+					value = (Object) readers[i].invokeExact(object);
+				} catch (Throwable e) {
+					// if anything failed, we return unknown value
+					value = new UnknownValue();
+				}
+
+				if (!isSameValue(values[i], value)) {
+					values[i] = value;
+					changedValues.put(properties[i], value);
+				}
+			}
+
+			if (stopped)
+				return false;
+		}
+
+		if (changedValues.isEmpty())
+			return false;
+
+		notifyNewValues(changedValues);
+		return true;
+	}
+
+	/**
+	 * Returns whether two property values are equal.
+	 */
+	private static boolean isSameValue(Object oldValue, Object newValue) {
+		if (oldValue == newValue)
+			return true;
+
+		if ((oldValue instanceof UnknownValue) && (newValue instanceof UnknownValue))
+			return true;
+
+		return (oldValue != null) && oldValue.equals(newValue);
+	}
+
+	/**
+	 * Passes changed values of properties to EDT.
+	 *
+	 * @param changedValues
+	 *            the map of changed values
+	 */
+	private void notifyNewValues(final Map<PropertyDescriptor, Object> changedValues) {
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				if (!stopped)
+					updateValuesInSwing(changedValues);
+			}
+		});
+	}
+
+	/**
+	 * Updates values of other components according to map of changed values.
+	 * This method is always called in EDT.
+	 *
+	 * @param values
+	 *            the map of changed values
+	 */
+	public void updateValuesInSwing(Map<PropertyDescriptor, Object> values) {
+		// update code
+	}
+}
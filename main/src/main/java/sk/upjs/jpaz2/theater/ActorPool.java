@@ -0,0 +1,375 @@
+package sk.upjs.jpaz2.theater;
+
+import java.lang.reflect.Constructor;
+import java.util.*;
+
+import sk.upjs.jpaz2.*;
+
+/**
+ * Pool of reusable actors. Games that frequently create and discard actors
+ * (e.g., falling objects, bullets) can obtain actors from the pool and
+ * release them back to the pool instead of constructing new actors. Released
+ * actors are removed from their pane and reset by the method
+ * {@link #resetActor(Actor)} that can be overridden in order to reset state of
+ * actors.
+ *
+ * @param <T>
+ *            the class of pooled actors.
+ */
+public class ActorPool<T extends Actor> {
+
+	/**
+	 * Default maximal number of free actors kept by the pool.
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * Constructor of actors or null, if actors are created by an overridden
+	 * method {@link #createActor()}.
+	 */
+	private final Constructor<T> actorConstructor;
+
+	/**
+	 * Maximal number of free actors kept by the pool.
+	 */
+	private final int capacity;
+
+	/**
+	 * Free actors that can be obtained.
+	 */
+	private final ArrayDeque<T> freeActors = new ArrayDeque<T>();
+
+	/**
+	 * Actors obtained from the pool that have not been released.
+	 */
+	private final Set<T> activeActors = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+
+	/**
+	 * Number of actors created by the pool.
+	 */
+	private long createdCount;
+
+	/**
+	 * Number of obtained actors that were reused.
+	 */
+	private long reusedCount;
+
+	/**
+	 * Number of released actors.
+	 */
+	private long releasedCount;
+
+	/**
+	 * Number of released actors that were discarded, since the pool was full.
+	 */
+	private long discardedCount;
+
+	/**
+	 * Constructs a pool of actors created by the public constructor without
+	 * parameters of given class.
+	 *
+	 * @param actorClass
+	 *            the class of actors.
+	 */
+	public ActorPool(Class<T> actorClass) {
+		this(actorClass, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructs a pool of actors created by the public constructor without
+	 * parameters of given class.
+	 *
+	 * @param actorClass
+	 *            the class of actors.
+	 * @param capacity
+	 *            the maximal number of free actors kept by the pool.
+	 */
+	public ActorPool(Class<T> actorClass, int capacity) {
+		if (actorClass == null) {
+			throw new NullPointerException("Class of actors cannot be null.");
+		}
+
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity of pool cannot be negative.");
+		}
+
+		try {
+			this.actorConstructor = actorClass.getConstructor();
+		} catch (NoSuchMethodException e) {
+			throw new RuntimeException("Class " + actorClass.getName()
+					+ " has no public constructor without parameters.");
+		}
+
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Constructs a pool of actors created by the overridden method
+	 * {@link #createActor()}.
+	 *
+	 * @param capacity
+	 *            the maximal number of free actors kept by the pool.
+	 */
+	protected ActorPool(int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("Capacity of pool cannot be negative.");
+		}
+
+		this.actorConstructor = null;
+		this.capacity = capacity;
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Obtaining and releasing actors
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns an actor from the pool. If there is no free actor, a new actor
+	 * is created.
+	 *
+	 * @return the actor.
+	 */
+	public T obtain() {
+		return obtain(null);
+	}
+
+	/**
+	 * Returns an actor from the pool and adds it to a pane. If there is no
+	 * free actor, a new actor is created.
+	 *
+	 * @param pane
+	 *            the pane where the actor is added, or null, if the actor
+	 *            should not be added to a pane.
+	 * @return the actor.
+	 */
+	public T obtain(Pane pane) {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			T actor = freeActors.pollLast();
+			if (actor != null) {
+				reusedCount++;
+			} else {
+				actor = newActor();
+			}
+
+			activeActors.add(actor);
+			if (pane != null) {
+				pane.add(actor);
+			}
+
+			return actor;
+		}
+	}
+
+	/**
+	 * Releases an actor back to the pool. The actor is removed from its pane
+	 * and reset. The actor must not be used after it is released.
+	 *
+	 * @param actor
+	 *            the actor obtained from this pool.
+	 */
+	public void release(T actor) {
+		if (actor == null) {
+			return;
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			if (!activeActors.remove(actor)) {
+				throw new RuntimeException("The actor is not obtained from this pool or it is already released.");
+			}
+
+			releasedCount++;
+			Pane pane = actor.getPane();
+			if (pane != null) {
+				pane.remove(actor);
+			}
+
+			if (freeActors.size() >= capacity) {
+				discardedCount++;
+				return;
+			}
+
+			resetActor(actor);
+			freeActors.addLast(actor);
+		}
+	}
+
+	/**
+	 * Releases actors back to the pool.
+	 *
+	 * @param actors
+	 *            the actors obtained from this pool.
+	 */
+	public void releaseAll(Collection<? extends T> actors) {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			for (T actor : actors) {
+				release(actor);
+			}
+		}
+	}
+
+	/**
+	 * Creates free actors in advance, so that actors can be obtained without
+	 * construction of new actors.
+	 *
+	 * @param count
+	 *            the desired number of free actors (limited by capacity of the
+	 *            pool).
+	 */
+	public void prefill(int count) {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			count = Math.min(count, capacity);
+			while (freeActors.size() < count) {
+				T actor = newActor();
+				resetActor(actor);
+				freeActors.addLast(actor);
+			}
+		}
+	}
+
+	/**
+	 * Discards all free actors.
+	 */
+	public void clear() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			freeActors.clear();
+		}
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Creation and reset of actors
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Creates a new actor and updates statistics.
+	 */
+	private T newActor() {
+		T actor = createActor();
+		if (actor == null) {
+			throw new RuntimeException("Created actor cannot be null.");
+		}
+
+		createdCount++;
+		return actor;
+	}
+
+	/**
+	 * Creates a new actor. The default implementation invokes the public
+	 * constructor without parameters of the class of actors.
+	 *
+	 * @return the new actor.
+	 */
+	protected T createActor() {
+		if (actorConstructor == null) {
+			throw new RuntimeException("The method createActor must be overridden.");
+		}
+
+		try {
+			return actorConstructor.newInstance();
+		} catch (Exception e) {
+			throw new RuntimeException("Creation of actor " + actorConstructor.getDeclaringClass().getName()
+					+ " failed.", e);
+		}
+	}
+
+	/**
+	 * Resets state of an actor that is returned to the pool. The method is
+	 * invoked after the actor is removed from its pane. The default
+	 * implementation does nothing.
+	 *
+	 * @param actor
+	 *            the actor.
+	 */
+	protected void resetActor(T actor) {
+
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Statistics
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns the maximal number of free actors kept by the pool.
+	 *
+	 * @return the capacity of the pool.
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of free actors in the pool.
+	 *
+	 * @return the number of free actors.
+	 */
+	public int getFreeCount() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return freeActors.size();
+		}
+	}
+
+	/**
+	 * Returns the number of actors obtained from the pool that have not been
+	 * released.
+	 *
+	 * @return the number of active actors.
+	 */
+	public int getActiveCount() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return activeActors.size();
+		}
+	}
+
+	/**
+	 * Returns the number of actors created by the pool.
+	 *
+	 * @return the number of created actors.
+	 */
+	public long getCreatedCount() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return createdCount;
+		}
+	}
+
+	/**
+	 * Returns the number of obtained actors that were reused.
+	 *
+	 * @return the number of reused actors.
+	 */
+	public long getReusedCount() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return reusedCount;
+		}
+	}
+
+	/**
+	 * Returns the number of released actors.
+	 *
+	 * @return the number of released actors.
+	 */
+	public long getReleasedCount() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return releasedCount;
+		}
+	}
+
+	/**
+	 * Returns the number of released actors that were discarded, since the
+	 * pool was full.
+	 *
+	 * @return the number of discarded actors.
+	 */
+	public long getDiscardedCount() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return discardedCount;
+		}
+	}
+
+	@Override
+	public String toString() {
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return "ActorPool[free=" + freeActors.size() + ", active=" + activeActors.size() + ", created="
+					+ createdCount + ", reused=" + reusedCount + ", released=" + releasedCount + ", discarded="
+					+ discardedCount + "]";
+		}
+	}
+}
@@ -32,6 +32,17 @@ public abstract class Scene extends Pane {
 		return stage;
 	}
 
+	/**
+	 * Prepares the scene to be presented, e.g., loads and decodes its assets.
+	 * The method is invoked once after construction of the scene, before the
+	 * scene is presented for the first time or when the scene is prepared by
+	 * {@link Stage#prepareScene(String)}. The method can be invoked in a
+	 * background thread. The default implementation does nothing.
+	 */
+	public void prepare() {
+
+	}
+
 	/**
 	 * Starts the scene.
 	 */
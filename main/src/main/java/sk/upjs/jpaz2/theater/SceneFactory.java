@@ -0,0 +1,15 @@
+package sk.upjs.jpaz2.theater;
+
+/**
+ * Factory constructing a scene of a stage. Scenes added to a stage by a
+ * factory are constructed when they are used for the first time.
+ */
+public interface SceneFactory {
+
+	/**
+	 * Constructs the scene.
+	 * 
+	 * @return the new scene belonging to the stage.
+	 */
+	public Scene createScene();
+}
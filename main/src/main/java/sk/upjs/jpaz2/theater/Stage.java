@@ -1,6 +1,7 @@
 package sk.upjs.jpaz2.theater;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.prefs.Preferences;
 
 import sk.upjs.jpaz2.*;
@@ -11,11 +12,91 @@ import sk.upjs.jpaz2.*;
  */
 public abstract class Stage {
 
+	/**
+	 * Record about a scene of the stage.
+	 */
+	private static class SceneRecord {
+		/**
+		 * The scene or null, if the scene is not constructed.
+		 */
+		Scene scene;
+
+		/**
+		 * Factory constructing the scene or null, if the scene was added as a
+		 * constructed scene.
+		 */
+		final SceneFactory factory;
+
+		/**
+		 * Value of the usage counter when the scene was presented last time.
+		 */
+		long lastUsage;
+
+		/**
+		 * Indicates whether the method {@link Scene#prepare()} of the scene has
+		 * been invoked.
+		 */
+		boolean prepared;
+
+		/**
+		 * Preparation of the scene or null, if the scene has not been prepared
+		 * since its construction or release of its resources.
+		 */
+		ScenePreparation preparation;
+
+		/**
+		 * Names of scenes that are prepared in background when the scene is
+		 * presented.
+		 */
+		String[] preparationHints = new String[0];
+
+		/**
+		 * Constructs the record about a scene.
+		 */
+		SceneRecord(Scene scene, SceneFactory factory) {
+			this.scene = scene;
+			this.factory = factory;
+		}
+	}
+
+	/**
+	 * Preparation of a scene: construction of the scene, preparation of its
+	 * assets and rendering of its content. Threads waiting for completion of
+	 * a preparation wait on the JPAZ lock.
+	 */
+	private static class ScenePreparation extends FutureTask<Scene> {
+
+		/**
+		 * Constructs the preparation.
+		 */
+		ScenePreparation(Callable<Scene> callable) {
+			super(callable);
+		}
+
+		@Override
+		protected void done() {
+			Object lock = JPAZUtilities.getJPAZLock();
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+
 	/**
 	 * Preference key storing whether the music is muted.
 	 */
 	private static final String MUTE_MUSIC_KEY = "$mute-music";
 
+	/**
+	 * Prefix of storage keys of score tables.
+	 */
+	private static final String SCORES_KEY_PREFIX = "$scores:";
+
+	/**
+	 * Maximal number of scores in a score table.
+	 */
+	private static final int MAX_SCORES = 10;
+
 	/**
 	 * Indicates whether the game/show is started.
 	 */
@@ -44,7 +125,23 @@ public abstract class Stage {
 	/**
 	 * Scenes of the game/show that can be played on the stage.
 	 */
-	private final Map<String, Scene> scenes = new HashMap<String, Scene>();
+	private final Map<String, SceneRecord> scenes = new HashMap<String, SceneRecord>();
+
+	/**
+	 * Maximal number of inactive scenes whose resources are retained, or -1,
+	 * if resources of inactive scenes are never released.
+	 */
+	private int maxInactiveScenes = -1;
+
+	/**
+	 * Counter incremented whenever a scene is presented.
+	 */
+	private long usageCounter;
+
+	/**
+	 * Executor preparing scenes in background.
+	 */
+	private final ThreadPoolExecutor preparationExecutor;
 
 	/**
 	 * Music clip played in the background.
@@ -66,12 +163,27 @@ public abstract class Stage {
 	 */
 	private Scene currentScene;
 
+	/**
+	 * Indicates whether the current scene is started, i.e., it was not
+	 * stopped by a change of scene in progress.
+	 */
+	private boolean currentSceneRunning;
+
+	/**
+	 * Number of requested changes of scene. It identifies the latest change
+	 * of scene.
+	 */
+	private long sceneChangeCounter;
+
 	/**
 	 * Name of the current scene.
 	 */
 	private String nameOfCurrentScene;
 
-	private final Preferences preferences;
+	/**
+	 * Storage of preferences and scores.
+	 */
+	private final StageStorage storage;
 
 	/**
 	 * Constructs the stage.
@@ -90,7 +202,17 @@ public abstract class Stage {
 		this.width = width;
 		this.height = height;
 		this.icon = icon;
-		this.preferences = createUserPreferences();
+		this.storage = StageStorage.forFile(StageStorage.getStorageFile(this.getClass()));
+
+		preparationExecutor = new ThreadPoolExecutor(1, 1, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+				new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "JPAZ scene preparation");
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		preparationExecutor.allowCoreThreadTimeOut(true);
 
 		initializePreferences();
 	}
@@ -134,8 +256,10 @@ public abstract class Stage {
 			throw new RuntimeException("Unknown initial scene \"" + initialScene + "\"");
 		}
 
-		currentScene = scenes.get(initialScene);
+		SceneRecord record = scenes.get(initialScene);
+		currentScene = awaitPreparedScene(initialScene, record);
 		nameOfCurrentScene = initialScene;
+		record.lastUsage = ++usageCounter;
 
 		mainWindow = new JPAZWindow(currentScene);
 		mainWindow.setTitle(name);
@@ -148,6 +272,8 @@ public abstract class Stage {
 		}
 
 		currentScene.start();
+		currentSceneRunning = true;
+		prepareHintedScenes(record);
 	}
 
 	/**
@@ -161,7 +287,16 @@ public abstract class Stage {
 	}
 
 	/**
-	 * Changes the current scene with a transition effect.
+	 * Changes the current scene with a transition effect. The current scene is
+	 * stopped first. If the new scene is not prepared (see
+	 * {@link #prepareScene(String)}), the scene is prepared before the
+	 * transition is started. If a preparation of the scene is running in
+	 * background, the method waits for its completion. While waiting, the JPAZ
+	 * lock is released, so that other threads (including event handlers and
+	 * ticks of other panes) can run. For this reason, the current scene is
+	 * stopped before waiting. If the scene is changed again while waiting, the
+	 * latest change takes precedence and this change is abandoned. If
+	 * preparation of the scene fails, the stopped scene is started again.
 	 * 
 	 * @param name
 	 *            the name of scene.
@@ -179,19 +314,125 @@ public abstract class Stage {
 			throw new RuntimeException("Unknown scene \"" + name + "\".");
 		}
 
-		if (currentScene != null) {
-			currentScene.stop();
+		SceneRecord record = scenes.get(name);
+		Object lock = JPAZUtilities.getJPAZLock();
+		long change;
+		synchronized (lock) {
+			// the current scene cannot run while the lock is released during
+			// waiting for the new scene
+			if ((currentScene != null) && currentSceneRunning) {
+				currentSceneRunning = false;
+				currentScene.stop();
+			}
+
+			change = ++sceneChangeCounter;
 		}
 
-		currentScene = scenes.get(name);
-		nameOfCurrentScene = name;
-		currentScene.start();
+		Scene scene;
+		try {
+			scene = awaitPreparedScene(name, record);
+		} catch (RuntimeException e) {
+			synchronized (lock) {
+				if ((change == sceneChangeCounter) && (currentScene != null) && !currentSceneRunning) {
+					currentScene.start();
+					currentSceneRunning = true;
+				}
+			}
+
+			throw e;
+		}
+
+		synchronized (lock) {
+			// a later change of scene takes precedence
+			if (change != sceneChangeCounter) {
+				return;
+			}
+
+			currentScene = scene;
+			nameOfCurrentScene = name;
+			record.lastUsage = ++usageCounter;
+			currentScene.start();
+			currentSceneRunning = true;
+		}
 
 		if ((effect == null) || (duration <= 0)) {
 			mainWindow.bindTo(currentScene);
 		} else {
 			mainWindow.rebindWithEffect(currentScene, effect, duration);
 		}
+
+		releaseInactiveScenes();
+		prepareHintedScenes(record);
+	}
+
+	/**
+	 * Prepares a scene in background so that the scene can be presented
+	 * without delay: the scene is constructed (if it is added by a factory),
+	 * its method {@link Scene#prepare()} is invoked and its content is
+	 * rendered. Preparation of a prepared scene has no effect.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 */
+	public void prepareScene(String name) {
+		SceneRecord record = scenes.get(name);
+		if (record == null) {
+			throw new RuntimeException("Unknown scene \"" + name + "\".");
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			if (record.preparation != null) {
+				return;
+			}
+
+			record.preparation = createPreparation(name, record);
+			preparationExecutor.execute(record.preparation);
+		}
+	}
+
+	/**
+	 * Returns whether a scene is prepared to be presented without delay.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 * @return true, if the scene is prepared, false otherwise.
+	 */
+	public boolean isScenePrepared(String name) {
+		SceneRecord record = scenes.get(name);
+		if (record == null) {
+			throw new RuntimeException("Unknown scene \"" + name + "\".");
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			return (record.preparation != null) && record.preparation.isDone() && record.prepared;
+		}
+	}
+
+	/**
+	 * Sets names of scenes that are prepared in background whenever a scene
+	 * is presented, typically the scenes that can follow the scene.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 * @param nextScenes
+	 *            the names of scenes that are prepared when the scene is
+	 *            presented.
+	 */
+	public void setPreparationHints(String name, String... nextScenes) {
+		SceneRecord record = scenes.get(name);
+		if (record == null) {
+			throw new RuntimeException("Unknown scene \"" + name + "\".");
+		}
+
+		for (String nextScene : nextScenes) {
+			if (!scenes.containsKey(nextScene)) {
+				throw new RuntimeException("Unknown scene \"" + nextScene + "\".");
+			}
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			record.preparationHints = nextScenes.clone();
+		}
 	}
 
 	/**
@@ -301,13 +542,7 @@ public abstract class Stage {
 			}
 		}
 
-		if (preferences != null) {
-			try {
-				preferences.putBoolean(MUTE_MUSIC_KEY, this.mutedMusic);
-			} catch (Exception ignore) {
-				System.err.println("Setting of preference " + MUTE_MUSIC_KEY + " failed.");
-			}
-		}
+		storage.put(MUTE_MUSIC_KEY, this.mutedMusic);
 	}
 
 	/**
@@ -335,18 +570,46 @@ public abstract class Stage {
 			throw new RuntimeException("Scene " + name + " is already a part of the stage.");
 		}
 
-		scenes.put(name, scene);
+		scenes.put(name, new SceneRecord(scene, null));
 	}
 
 	/**
-	 * Returns scene with given name.
+	 * Adds scene constructed by a factory to the stage. The scene is
+	 * constructed when it is used for the first time. If the scene is released
+	 * due to limit of inactive scenes (see {@link #setMaxInactiveScenes(int)}),
+	 * it is constructed again when it is used.
+	 * 
+	 * @param name
+	 *            the name of scene.
+	 * @param sceneFactory
+	 *            the factory constructing the scene.
+	 */
+	public void addScene(String name, SceneFactory sceneFactory) {
+		if (name == null) {
+			throw new NullPointerException("Name of scene must not be null.");
+		}
+
+		if (sceneFactory == null) {
+			throw new NullPointerException("Scene factory must not be null.");
+		}
+
+		if (scenes.containsKey(name)) {
+			throw new RuntimeException("Scene " + name + " is already a part of the stage.");
+		}
+
+		scenes.put(name, new SceneRecord(null, sceneFactory));
+	}
+
+	/**
+	 * Returns scene with given name. If the scene is not constructed yet, it
+	 * is constructed by its factory.
 	 * 
 	 * @param name
 	 *            the name of the scene.
 	 * @return the scene with given name.
 	 */
 	public Scene getScene(String name) {
-		return scenes.get(name);
+		return obtainScene(name);
 	}
 
 	/**
@@ -362,7 +625,7 @@ public abstract class Stage {
 	 */
 	@SuppressWarnings("unchecked")
 	public <T extends Scene> T getScene(String name, Class<T> sceneClass) {
-		Scene result = scenes.get(name);
+		Scene result = obtainScene(name);
 		if (result == null) {
 			return null;
 		}
@@ -376,35 +639,295 @@ public abstract class Stage {
 	}
 
 	/**
-	 * Sets value of a preference.
+	 * Returns the maximal number of inactive scenes whose resources are
+	 * retained.
 	 * 
-	 * @param key
-	 *            the key.
-	 * @param value
-	 *            the value.
-	 * @return true, when writing of preference was successful, false otherwise.
+	 * @return the maximal number of inactive scenes, or -1, if resources of
+	 *         inactive scenes are never released.
 	 */
-	public boolean setPreference(String key, String value) {
-		checkPreferenceKey(key);
-		key = key.trim();
+	public int getMaxInactiveScenes() {
+		return maxInactiveScenes;
+	}
 
-		if (preferences == null) {
-			return false;
+	/**
+	 * Sets the maximal number of inactive scenes whose resources are retained.
+	 * When the scene is changed, least recently presented scenes exceeding
+	 * the limit are released: scenes added by a factory are discarded and
+	 * constructed again when they are used, other scenes release their
+	 * rendering buffers (see {@link Pane#releaseBuffers()}).
+	 * 
+	 * @param maxInactiveScenes
+	 *            the maximal number of inactive scenes, or -1, if resources of
+	 *            inactive scenes should be never released (default).
+	 */
+	public void setMaxInactiveScenes(int maxInactiveScenes) {
+		if (maxInactiveScenes < -1) {
+			throw new IllegalArgumentException("The maximal number of inactive scenes must be at least -1.");
 		}
 
-		try {
-			if (value == null) {
-				preferences.remove(key);
-			} else {
-				preferences.put(key, value);
+		this.maxInactiveScenes = maxInactiveScenes;
+	}
+
+	/**
+	 * Returns the scene with given name. If the scene is not constructed yet,
+	 * it is constructed by its factory.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 * @return the scene, or null, if there is no scene with given name.
+	 */
+	private Scene obtainScene(String name) {
+		SceneRecord record = scenes.get(name);
+		if (record == null) {
+			return null;
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			// the scene can be constructed by a running preparation
+			if ((record.scene == null) && (record.preparation != null)) {
+				waitForPreparation(record.preparation);
+			}
+
+			if (record.scene == null) {
+				record.scene = createScene(name, record);
+			}
+
+			return record.scene;
+		}
+	}
+
+	/**
+	 * Creates a scene using its factory.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 * @param record
+	 *            the record about the scene.
+	 * @return the created scene.
+	 */
+	private Scene createScene(String name, SceneRecord record) {
+		Scene scene = record.factory.createScene();
+		if (scene == null) {
+			throw new RuntimeException("Factory of scene " + name + " returned null.");
+		}
+
+		if (scene.getStage() != this) {
+			throw new RuntimeException("Scene " + name + " does not belong to this stage.");
+		}
+
+		return scene;
+	}
+
+	/**
+	 * Creates a preparation of a scene.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 * @param record
+	 *            the record about the scene.
+	 * @return the preparation.
+	 */
+	private ScenePreparation createPreparation(final String name, final SceneRecord record) {
+		return new ScenePreparation(new Callable<Scene>() {
+			public Scene call() throws Exception {
+				Object lock = JPAZUtilities.getJPAZLock();
+
+				// construct the scene without holding the lock, the scene
+				// cannot be constructed concurrently, since threads obtaining
+				// the scene wait for completion of the preparation
+				Scene scene;
+				boolean prepared;
+				synchronized (lock) {
+					scene = record.scene;
+					prepared = record.prepared;
+				}
+
+				if (scene == null) {
+					scene = createScene(name, record);
+					synchronized (lock) {
+						record.scene = scene;
+					}
+				}
+
+				if (!prepared) {
+					scene.prepare();
+					synchronized (lock) {
+						record.prepared = true;
+					}
+				}
+
+				scene.prerender();
+				return scene;
 			}
+		});
+	}
 
-			return true;
+	/**
+	 * Returns a prepared scene. If the scene is not prepared, it is prepared
+	 * in the current thread. If a preparation is running in background, the
+	 * method waits for its completion.
+	 * 
+	 * @param name
+	 *            the name of the scene.
+	 * @param record
+	 *            the record about the scene.
+	 * @return the prepared scene.
+	 */
+	private Scene awaitPreparedScene(String name, SceneRecord record) {
+		ScenePreparation preparation;
+		boolean runPreparation = false;
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			if (record.preparation == null) {
+				record.preparation = createPreparation(name, record);
+				runPreparation = true;
+			}
+			preparation = record.preparation;
+		}
+
+		if (runPreparation) {
+			preparation.run();
+		} else {
+			synchronized (JPAZUtilities.getJPAZLock()) {
+				waitForPreparation(preparation);
+			}
+		}
+
+		try {
+			return preparation.get();
 		} catch (Exception e) {
-			return false;
+			// failed preparation is repeated when the scene is requested again
+			synchronized (JPAZUtilities.getJPAZLock()) {
+				if (record.preparation == preparation) {
+					record.preparation = null;
+				}
+			}
+
+			Throwable cause = (e instanceof ExecutionException) ? e.getCause() : e;
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+
+			throw new RuntimeException("Preparation of scene \"" + name + "\" failed.", cause);
+		}
+	}
+
+	/**
+	 * Waits for completion of a preparation. The method must be invoked while
+	 * holding the JPAZ lock. The lock is released while waiting, so that the
+	 * preparation can complete. If the waiting thread is interrupted, the
+	 * interrupted status of the thread is preserved.
+	 * 
+	 * @param preparation
+	 *            the preparation.
+	 */
+	private void waitForPreparation(ScenePreparation preparation) {
+		Object lock = JPAZUtilities.getJPAZLock();
+		boolean interrupted = false;
+		while (!preparation.isDone()) {
+			try {
+				lock.wait();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Starts background preparation of scenes hinted by a scene.
+	 * 
+	 * @param record
+	 *            the record about the presented scene.
+	 */
+	private void prepareHintedScenes(SceneRecord record) {
+		String[] hints;
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			hints = record.preparationHints;
+		}
+
+		for (String hint : hints) {
+			prepareScene(hint);
 		}
 	}
 
+	/**
+	 * Releases least recently presented inactive scenes exceeding the limit
+	 * of inactive scenes.
+	 */
+	private void releaseInactiveScenes() {
+		if (maxInactiveScenes < 0) {
+			return;
+		}
+
+		synchronized (JPAZUtilities.getJPAZLock()) {
+			releaseInactiveScenesLocked();
+		}
+	}
+
+	/**
+	 * Releases least recently presented inactive scenes exceeding the limit
+	 * of inactive scenes while holding the JPAZ lock.
+	 */
+	private void releaseInactiveScenesLocked() {
+		SceneRecord currentRecord = scenes.get(nameOfCurrentScene);
+		Set<String> hintedScenes = new HashSet<String>(Arrays.asList(currentRecord.preparationHints));
+
+		// scenes being prepared and scenes hinted by the current scene are not
+		// released
+		java.util.List<SceneRecord> inactiveScenes = new ArrayList<SceneRecord>();
+		for (Map.Entry<String, SceneRecord> entry : scenes.entrySet()) {
+			SceneRecord record = entry.getValue();
+			if ((record.scene == null) || (record == currentRecord) || hintedScenes.contains(entry.getKey())) {
+				continue;
+			}
+
+			if ((record.preparation != null) && !record.preparation.isDone()) {
+				continue;
+			}
+
+			inactiveScenes.add(record);
+		}
+
+		if (inactiveScenes.size() <= maxInactiveScenes) {
+			return;
+		}
+
+		// the most recently presented scenes are retained
+		Collections.sort(inactiveScenes, new Comparator<SceneRecord>() {
+			public int compare(SceneRecord r1, SceneRecord r2) {
+				return Long.compare(r2.lastUsage, r1.lastUsage);
+			}
+		});
+
+		for (SceneRecord record : inactiveScenes.subList(maxInactiveScenes, inactiveScenes.size())) {
+			record.scene.releaseBuffers();
+			record.preparation = null;
+			if (record.factory != null) {
+				record.scene = null;
+				record.prepared = false;
+			}
+		}
+	}
+
+	/**
+	 * Sets value of a preference. Preferences are kept in memory and they are
+	 * written to a local file in background.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value, null to remove the preference.
+	 * @return true, when writing of preference was successful, false otherwise.
+	 */
+	public boolean setPreference(String key, String value) {
+		checkPreferenceKey(key);
+		storage.put(key.trim(), value);
+		return true;
+	}
+
 	/**
 	 * Returns value of a preference.
 	 * 
@@ -412,24 +935,183 @@ public abstract class Stage {
 	 *            the key.
 	 * @param defaultValue
 	 *            the default value.
-	 * @return the value of preference, or default value, if retrieval of the
-	 *         preference value failed.
+	 * @return the value of preference, or default value, if the preference is
+	 *         not set or it is not a string preference.
 	 */
 	public String getPreference(String key, String defaultValue) {
 		checkPreferenceKey(key);
-		key = key.trim();
+		return storage.get(key.trim(), String.class, defaultValue);
+	}
 
-		if (preferences == null) {
-			return defaultValue;
-		}
+	/**
+	 * Sets value of an int preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value.
+	 */
+	public void setIntPreference(String key, int value) {
+		checkPreferenceKey(key);
+		storage.put(key.trim(), value);
+	}
 
-		try {
-			return preferences.get(key, defaultValue);
-		} catch (Exception e) {
-			return defaultValue;
+	/**
+	 * Returns value of an int preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param defaultValue
+	 *            the default value.
+	 * @return the value of preference, or default value, if the preference is
+	 *         not set or it is not an int preference.
+	 */
+	public int getIntPreference(String key, int defaultValue) {
+		checkPreferenceKey(key);
+		return storage.get(key.trim(), Integer.class, defaultValue);
+	}
+
+	/**
+	 * Sets value of a long preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value.
+	 */
+	public void setLongPreference(String key, long value) {
+		checkPreferenceKey(key);
+		storage.put(key.trim(), value);
+	}
+
+	/**
+	 * Returns value of a long preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param defaultValue
+	 *            the default value.
+	 * @return the value of preference, or default value, if the preference is
+	 *         not set or it is not a long preference.
+	 */
+	public long getLongPreference(String key, long defaultValue) {
+		checkPreferenceKey(key);
+		return storage.get(key.trim(), Long.class, defaultValue);
+	}
+
+	/**
+	 * Sets value of a double preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value.
+	 */
+	public void setDoublePreference(String key, double value) {
+		checkPreferenceKey(key);
+		storage.put(key.trim(), value);
+	}
+
+	/**
+	 * Returns value of a double preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param defaultValue
+	 *            the default value.
+	 * @return the value of preference, or default value, if the preference is
+	 *         not set or it is not a double preference.
+	 */
+	public double getDoublePreference(String key, double defaultValue) {
+		checkPreferenceKey(key);
+		return storage.get(key.trim(), Double.class, defaultValue);
+	}
+
+	/**
+	 * Sets value of a byte array preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value, null to remove the preference.
+	 */
+	public void setBytesPreference(String key, byte[] value) {
+		checkPreferenceKey(key);
+		storage.put(key.trim(), (value != null) ? value.clone() : null);
+	}
+
+	/**
+	 * Returns value of a byte array preference.
+	 * 
+	 * @param key
+	 *            the key.
+	 * @param defaultValue
+	 *            the default value.
+	 * @return the value of preference, or default value, if the preference is
+	 *         not set or it is not a byte array preference.
+	 */
+	public byte[] getBytesPreference(String key, byte[] defaultValue) {
+		checkPreferenceKey(key);
+		byte[] value = storage.get(key.trim(), byte[].class, null);
+		return (value != null) ? value.clone() : defaultValue;
+	}
+
+	/**
+	 * Adds a score to a table of best scores. The table keeps at most 10
+	 * highest scores in descending order.
+	 * 
+	 * @param table
+	 *            the name of the score table.
+	 * @param score
+	 *            the score.
+	 * @return the position (starting from 0) of the score in the table, or -1,
+	 *         if the score is not high enough to be in the table.
+	 */
+	public int addScore(String table, long score) {
+		checkPreferenceKey(table);
+		String key = SCORES_KEY_PREFIX + table.trim();
+
+		synchronized (storage) {
+			long[] scores = storage.get(key, long[].class, new long[0]);
+			int position = 0;
+			while ((position < scores.length) && (scores[position] >= score)) {
+				position++;
+			}
+
+			if (position >= MAX_SCORES) {
+				return -1;
+			}
+
+			long[] newScores = new long[Math.min(scores.length + 1, MAX_SCORES)];
+			System.arraycopy(scores, 0, newScores, 0, position);
+			newScores[position] = score;
+			System.arraycopy(scores, position, newScores, position + 1, newScores.length - position - 1);
+			storage.put(key, newScores);
+			return position;
 		}
 	}
 
+	/**
+	 * Returns scores in a table of best scores.
+	 * 
+	 * @param table
+	 *            the name of the score table.
+	 * @return the scores in descending order.
+	 */
+	public long[] getScores(String table) {
+		checkPreferenceKey(table);
+		return storage.get(SCORES_KEY_PREFIX + table.trim(), long[].class, new long[0]).clone();
+	}
+
+	/**
+	 * Writes pending changes of preferences and scores to the local file. The
+	 * method blocks until the changes are written. Pending changes are written
+	 * automatically in background and when the application terminates.
+	 */
+	public void flushPreferences() {
+		storage.flush();
+	}
+
 	/**
 	 * Check whether preference key is valid.
 	 * 
@@ -448,28 +1130,47 @@ public abstract class Stage {
 	}
 
 	/**
-	 * Loads preferences.
+	 * Initializes preferences. If the local file with preferences does not
+	 * exist, preferences stored by previous versions in user preferences
+	 * (java.util.prefs) are imported.
 	 */
-	private Preferences createUserPreferences() {
-		try {
-			return Preferences.userNodeForPackage(this.getClass());
-		} catch (Exception e) {
-			return null;
+	private void initializePreferences() {
+		if (storage.startImport()) {
+			importUserPreferences();
 		}
+
+		mutedMusic = storage.get(MUTE_MUSIC_KEY, Boolean.class, false);
 	}
 
 	/**
-	 * Initializes preferences.
+	 * Imports preferences stored in user preferences (java.util.prefs).
 	 */
-	private void initializePreferences() {
-		if (preferences == null) {
-			return;
-		}
-
+	private void importUserPreferences() {
 		try {
-			mutedMusic = preferences.getBoolean(MUTE_MUSIC_KEY, false);
-		} catch (Exception ignore) {
-			System.err.println("Retrieving of preference " + MUTE_MUSIC_KEY + " failed.");
+			// node path is computed in the same way as in
+			// Preferences.userNodeForPackage
+			String packageName = StageStorage.getPackageName(this.getClass());
+			String nodePath = (packageName != null) ? "/" + packageName.replace('.', '/') : "/<unnamed>";
+
+			if (!Preferences.userRoot().nodeExists(nodePath)) {
+				return;
+			}
+
+			Preferences preferences = Preferences.userRoot().node(nodePath);
+			for (String key : preferences.keys()) {
+				String value = preferences.get(key, null);
+				if (value == null) {
+					continue;
+				}
+
+				if (MUTE_MUSIC_KEY.equals(key)) {
+					storage.put(key, Boolean.parseBoolean(value));
+				} else {
+					storage.put(key, value);
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Import of user preferences failed: " + e);
 		}
 	}
 }
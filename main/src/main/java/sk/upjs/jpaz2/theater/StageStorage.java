@@ -0,0 +1,549 @@
+package sk.upjs.jpaz2.theater;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Persistent storage of typed values (preferences, scores) of a stage. Values
+ * are kept in memory and changes are written to a local file asynchronously
+ * (write-behind): changes done within a short period are written together,
+ * the file is written to a temporary file that atomically replaces the
+ * original file. Pending changes are written when the virtual machine shuts
+ * down. Stages using the same storage file share a single storage. As
+ * preferences stored by java.util.prefs, the storage file is shared by all
+ * stages in the same package.
+ */
+final class StageStorage {
+
+	/**
+	 * Delay in milliseconds between a change and writing of the storage file.
+	 */
+	private static final long WRITE_DELAY = 1000;
+
+	/**
+	 * Magic number identifying the storage file.
+	 */
+	private static final int MAGIC = 0x4A50415A;
+
+	/**
+	 * Version of the format of the storage file.
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * Type tag of a string value.
+	 */
+	private static final byte STRING_TYPE = 1;
+
+	/**
+	 * Type tag of a boolean value.
+	 */
+	private static final byte BOOLEAN_TYPE = 2;
+
+	/**
+	 * Type tag of an int value.
+	 */
+	private static final byte INT_TYPE = 3;
+
+	/**
+	 * Type tag of a long value.
+	 */
+	private static final byte LONG_TYPE = 4;
+
+	/**
+	 * Type tag of a double value.
+	 */
+	private static final byte DOUBLE_TYPE = 5;
+
+	/**
+	 * Type tag of a byte array value.
+	 */
+	private static final byte BYTES_TYPE = 6;
+
+	/**
+	 * Type tag of a long array value.
+	 */
+	private static final byte LONGS_TYPE = 7;
+
+	/**
+	 * Executor writing storage files.
+	 */
+	private static final ScheduledThreadPoolExecutor writer;
+
+	/**
+	 * Storages backed by files mapped by canonical paths of the files. Pending
+	 * changes of the storages are written when the virtual machine shuts
+	 * down.
+	 */
+	private static final Map<String, StageStorage> storages = new HashMap<String, StageStorage>();
+
+	static {
+		writer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "JPAZ storage writer");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		try {
+			Runtime.getRuntime().addShutdownHook(new Thread("JPAZ storage shutdown") {
+				@Override
+				public void run() {
+					flushAll();
+				}
+			});
+		} catch (Exception e) {
+			System.err.println("Registration of storage shutdown hook failed: " + e);
+		}
+	}
+
+	/**
+	 * Stored values. Arrays are never modified after they are stored.
+	 */
+	private final Map<String, Object> values = new HashMap<String, Object>();
+
+	/**
+	 * The storage file or null, if values are kept only in memory.
+	 */
+	private final File file;
+
+	/**
+	 * Indicates whether the storage file existed when the storage was created.
+	 */
+	private final boolean loaded;
+
+	/**
+	 * Indicates whether import of values into the storage has been started.
+	 */
+	private boolean importStarted;
+
+	/**
+	 * Number of modifications of stored values.
+	 */
+	private long modificationCount;
+
+	/**
+	 * Number of modifications of stored values that have been written.
+	 */
+	private long writtenModificationCount;
+
+	/**
+	 * Indicates whether writing of the storage file is scheduled.
+	 */
+	private boolean writeScheduled;
+
+	/**
+	 * Lock serializing writes of the storage file.
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * Constructs the storage and loads values from the storage file.
+	 *
+	 * @param file
+	 *            the storage file or null, if values should be kept only in
+	 *            memory.
+	 */
+	private StageStorage(File file) {
+		this.file = file;
+		this.loaded = (file != null) && file.isFile() && load();
+	}
+
+	/**
+	 * Returns the storage backed by a file. All requests for the same file
+	 * return the same storage.
+	 *
+	 * @param file
+	 *            the storage file or null, if values should be kept only in
+	 *            memory.
+	 * @return the storage.
+	 */
+	static StageStorage forFile(File file) {
+		if (file == null) {
+			return new StageStorage(null);
+		}
+
+		String path;
+		try {
+			path = file.getCanonicalPath();
+		} catch (IOException e) {
+			path = file.getAbsolutePath();
+		}
+
+		synchronized (storages) {
+			StageStorage storage = storages.get(path);
+			if (storage == null) {
+				storage = new StageStorage(new File(path));
+				storages.put(path, storage);
+			}
+
+			return storage;
+		}
+	}
+
+	/**
+	 * Returns the storage file of a stage. All stages in the same package
+	 * share the storage file.
+	 *
+	 * @param stageClass
+	 *            the class of the stage.
+	 * @return the storage file, or null, if the file cannot be determined.
+	 */
+	static File getStorageFile(Class<?> stageClass) {
+		try {
+			File directory = new File(new File(System.getProperty("user.home"), ".jpaz2"), "stages");
+			String packageName = getPackageName(stageClass);
+			return new File(directory, ((packageName != null) ? packageName : "default-package") + ".dat");
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the name of package of a class computed from the class name (in
+	 * the same way as in Preferences.userNodeForPackage).
+	 *
+	 * @param aClass
+	 *            the class.
+	 * @return the name of package, or null, if the class is in the default
+	 *         package.
+	 */
+	static String getPackageName(Class<?> aClass) {
+		String className = aClass.getName();
+		int packageEnd = className.lastIndexOf('.');
+		return (packageEnd < 0) ? null : className.substring(0, packageEnd);
+	}
+
+	/**
+	 * Returns whether values should be imported into the storage, i.e.,
+	 * whether values have not been loaded from an existing storage file. The
+	 * method returns true at most once, so that values are imported only by
+	 * the first stage using the storage.
+	 */
+	synchronized boolean startImport() {
+		if (loaded || importStarted) {
+			return false;
+		}
+
+		importStarted = true;
+		return true;
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Values
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Returns a stored value.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param type
+	 *            the expected type of the value.
+	 * @param defaultValue
+	 *            the value returned if there is no value of the expected type.
+	 * @return the stored value or the default value.
+	 */
+	synchronized <T> T get(String key, Class<T> type, T defaultValue) {
+		Object value = values.get(key);
+		if (type.isInstance(value)) {
+			return type.cast(value);
+		}
+
+		return defaultValue;
+	}
+
+	/**
+	 * Stores a value. The value must be immutable or it must not be modified
+	 * after it is stored.
+	 *
+	 * @param key
+	 *            the key.
+	 * @param value
+	 *            the value, null to remove the value.
+	 */
+	synchronized void put(String key, Object value) {
+		Object oldValue = values.get(key);
+		if (isSameValue(oldValue, value)) {
+			return;
+		}
+
+		if (value == null) {
+			values.remove(key);
+		} else {
+			values.put(key, value);
+		}
+
+		modificationCount++;
+		scheduleWrite();
+	}
+
+	/**
+	 * Returns keys of stored values.
+	 */
+	synchronized Set<String> keys() {
+		return new HashSet<String>(values.keySet());
+	}
+
+	/**
+	 * Returns whether two stored values are equal.
+	 */
+	private static boolean isSameValue(Object v1, Object v2) {
+		if ((v1 instanceof byte[]) && (v2 instanceof byte[])) {
+			return Arrays.equals((byte[]) v1, (byte[]) v2);
+		}
+
+		if ((v1 instanceof long[]) && (v2 instanceof long[])) {
+			return Arrays.equals((long[]) v1, (long[]) v2);
+		}
+
+		return (v1 == null) ? (v2 == null) : v1.equals(v2);
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Writing
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Schedules writing of the storage file, if it is not scheduled.
+	 */
+	private void scheduleWrite() {
+		if ((file == null) || writeScheduled) {
+			return;
+		}
+
+		writeScheduled = true;
+		writer.schedule(new Runnable() {
+			public void run() {
+				synchronized (StageStorage.this) {
+					writeScheduled = false;
+				}
+				flush();
+			}
+		}, WRITE_DELAY, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Writes pending changes to the storage file. The method blocks until the
+	 * file is written.
+	 */
+	void flush() {
+		if (file == null) {
+			return;
+		}
+
+		synchronized (writeLock) {
+			Map<String, Object> snapshot;
+			long snapshotModificationCount;
+			synchronized (this) {
+				if (writtenModificationCount == modificationCount) {
+					return;
+				}
+
+				snapshot = new HashMap<String, Object>(values);
+				snapshotModificationCount = modificationCount;
+			}
+
+			try {
+				write(snapshot);
+				synchronized (this) {
+					writtenModificationCount = snapshotModificationCount;
+				}
+			} catch (Exception e) {
+				System.err.println("Writing of stage storage " + file + " failed: " + e);
+			}
+		}
+	}
+
+	/**
+	 * Writes pending changes of all storages.
+	 */
+	private static void flushAll() {
+		java.util.List<StageStorage> storagesToFlush;
+		synchronized (storages) {
+			storagesToFlush = new ArrayList<StageStorage>(storages.values());
+		}
+
+		for (StageStorage storage : storagesToFlush) {
+			storage.flush();
+		}
+	}
+
+	/**
+	 * Writes values to a temporary file that atomically replaces the storage
+	 * file.
+	 *
+	 * @param snapshot
+	 *            the values to be written.
+	 */
+	private void write(Map<String, Object> snapshot) throws IOException {
+		File directory = file.getParentFile();
+		if ((directory != null) && !directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Directory " + directory + " cannot be created.");
+		}
+
+		// unique name of the temporary file, the storage file can be written
+		// by other virtual machines
+		File tmpFile = File.createTempFile(file.getName() + ".", ".tmp", directory);
+		boolean moved = false;
+		try {
+			FileOutputStream fos = new FileOutputStream(tmpFile);
+			try {
+				DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeInt(snapshot.size());
+				for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+					out.writeUTF(entry.getKey());
+					writeValue(out, entry.getValue());
+				}
+				out.flush();
+				fos.getFD().sync();
+			} finally {
+				fos.close();
+			}
+
+			try {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+						StandardCopyOption.REPLACE_EXISTING);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			moved = true;
+		} finally {
+			if (!moved) {
+				tmpFile.delete();
+			}
+		}
+	}
+
+	/**
+	 * Writes a typed value.
+	 */
+	private static void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value instanceof String) {
+			out.writeByte(STRING_TYPE);
+			writeBytes(out, ((String) value).getBytes("UTF-8"));
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN_TYPE);
+			out.writeBoolean((Boolean) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INT_TYPE);
+			out.writeInt((Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG_TYPE);
+			out.writeLong((Long) value);
+		} else if (value instanceof Double) {
+			out.writeByte(DOUBLE_TYPE);
+			out.writeDouble((Double) value);
+		} else if (value instanceof byte[]) {
+			out.writeByte(BYTES_TYPE);
+			writeBytes(out, (byte[]) value);
+		} else if (value instanceof long[]) {
+			long[] longs = (long[]) value;
+			out.writeByte(LONGS_TYPE);
+			out.writeInt(longs.length);
+			for (long l : longs) {
+				out.writeLong(l);
+			}
+		} else {
+			throw new IOException("Unsupported type of value: " + value.getClass().getName());
+		}
+	}
+
+	/**
+	 * Writes an array of bytes preceded by its length.
+	 */
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	// ---------------------------------------------------------------------------------------------------
+	// Loading
+	// ---------------------------------------------------------------------------------------------------
+
+	/**
+	 * Loads values from the storage file.
+	 *
+	 * @return true, if the values have been loaded, false otherwise.
+	 */
+	private boolean load() {
+		try {
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			try {
+				if ((in.readInt() != MAGIC) || (in.readInt() != VERSION)) {
+					throw new IOException("Unsupported format.");
+				}
+
+				int count = in.readInt();
+				Map<String, Object> loadedValues = new HashMap<String, Object>();
+				for (int i = 0; i < count; i++) {
+					String key = in.readUTF();
+					loadedValues.put(key, readValue(in));
+				}
+
+				values.putAll(loadedValues);
+				return true;
+			} finally {
+				in.close();
+			}
+		} catch (Exception e) {
+			System.err.println("Reading of stage storage " + file + " failed: " + e);
+			return false;
+		}
+	}
+
+	/**
+	 * Reads a typed value.
+	 */
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+		case STRING_TYPE:
+			return new String(readBytes(in), "UTF-8");
+		case BOOLEAN_TYPE:
+			return in.readBoolean();
+		case INT_TYPE:
+			return in.readInt();
+		case LONG_TYPE:
+			return in.readLong();
+		case DOUBLE_TYPE:
+			return in.readDouble();
+		case BYTES_TYPE:
+			return readBytes(in);
+		case LONGS_TYPE:
+			long[] longs = new long[readLength(in)];
+			for (int i = 0; i < longs.length; i++) {
+				longs[i] = in.readLong();
+			}
+			return longs;
+		default:
+			throw new IOException("Unknown type of value: " + type);
+		}
+	}
+
+	/**
+	 * Reads an array of bytes preceded by its length.
+	 */
+	private static byte[] readBytes(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[readLength(in)];
+		in.readFully(bytes);
+		return bytes;
+	}
+
+	/**
+	 * Reads length of an array.
+	 */
+	private static int readLength(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			throw new IOException("Invalid length of array.");
+		}
+
+		return length;
+	}
+}